@@ -18,8 +18,13 @@
 
 package nl.tudelft.goal.SimpleIDE;
 
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.swing.Timer;
 
 import nl.tudelft.goal.SimpleIDE.actions.GOALAction;
 
@@ -53,6 +58,35 @@ public class ActionFactory {
 	 */
 	private static IDEState theInitialState = null;
 
+	/**
+	 * Minimum time in ms between two updates of all actions. A burst of state
+	 * changes within this time causes a single update.
+	 */
+	public static final int BROADCAST_DELAY = 20;
+
+	/**
+	 * The state of the last state change that has not been broadcast yet, or
+	 * null if there is none.
+	 */
+	private static final AtomicReference<IDEState> pendingState = new AtomicReference<IDEState>();
+
+	/**
+	 * Broadcasts the pending state change on the Swing thread.
+	 */
+	private static final Timer broadcastTimer = new Timer(BROADCAST_DELAY,
+			new ActionListener() {
+				@Override
+				public void actionPerformed(ActionEvent e) {
+					IDEState state = pendingState.getAndSet(null);
+					if (state != null) {
+						updateActions(state);
+					}
+				}
+			});
+	static {
+		broadcastTimer.setRepeats(false);
+	}
+
 	/**
 	 * This factory is singleton, you can't instantiate it.
 	 */
@@ -102,14 +136,36 @@ public class ActionFactory {
 	}
 
 	/**
-	 * Broadcast a state change to all actions.
+	 * Broadcast a state change to all actions. Thread safe. The actions are
+	 * updated on the Swing thread, at most {@link #BROADCAST_DELAY} ms later;
+	 * all state changes that are broadcast in the mean time are handled by
+	 * that same update.
 	 *
 	 * @param newState
 	 *            is the new state of the IDE.
 	 */
 	public static void broadcastStateChange(IDEState newState) {
-		for (GOALAction action : actionCache.values()) {
-			action.ideStateChangeEvent(newState);
+		if (pendingState.getAndSet(newState) == null) {
+			broadcastTimer.start();
+		}
+	}
+
+	/**
+	 * Updates all actions. The actions share one {@link IDEStateSnapshot}, so
+	 * the selection and run modes they ask for are computed only once.
+	 *
+	 * @param newState
+	 *            is the new state of the IDE.
+	 */
+	private static void updateActions(IDEState newState) {
+		IDEStateSnapshot snapshot = new IDEStateSnapshot(newState);
+		snapshot.freeze();
+		try {
+			for (GOALAction action : actionCache.values()) {
+				action.ideStateChangeEvent(snapshot);
+			}
+		} finally {
+			snapshot.release();
 		}
 	}
 
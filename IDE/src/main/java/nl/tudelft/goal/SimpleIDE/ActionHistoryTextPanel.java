@@ -29,6 +29,8 @@ import goal.tools.logging.GOALLogger;
 import java.util.HashMap;
 import java.util.Map;
 
+import nl.tudelft.goal.SimpleIDE.preferences.IntrospectorPreferences;
+
 /**
  * Shows the actions performed by the agents.
  *
@@ -61,7 +63,7 @@ DebugObserver {
 	 *            The name of the panel.
 	 */
 	public ActionHistoryTextPanel(String name) {
-		super("");
+		super("", IntrospectorPreferences.getMaxLines(), true);
 
 		this.name = name;
 
@@ -22,13 +22,19 @@ import goal.preferences.LoggingPreferences;
 import goal.tools.logging.Loggers;
 
 import java.awt.BorderLayout;
-import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 import java.util.logging.Level;
 
 import javax.swing.JPanel;
-import javax.swing.SwingUtilities;
 
 import nl.tudelft.goal.SimpleIDE.preferences.IDEPreferences;
 
@@ -50,7 +56,7 @@ public final class ConsoleTextPanel extends JPanel implements MarkedReadable {
 	 */
 	private static final long serialVersionUID = -2876615767667757598L;
 	private final LogTextTrackingScrollPane consoleoutput = new LogTextTrackingScrollPane(
-			"", IDEPreferences.getMaxLines());
+			"", IDEPreferences.getMaxLines(), true);
 
 	/**
 	 * DOC
@@ -110,51 +116,158 @@ public final class ConsoleTextPanel extends JPanel implements MarkedReadable {
 }
 
 /**
- * Handles streams coming from multiple processes. It buffers calls to SWING
- * until we received a full line. It still can happen that characters from
- * multiple processes are mixed, if they print simultaneously. We sometimes see
- * this happen if exceptions are printed... CHECK we may want to use this in
- * other stream printers too. If so, make separate file? CHECK: why buffer
- * lines? it may happen that a message is printed without line-end, which will
- * only appear once something else (with line-end) is printed.
+ * Output stream that shows what is written to it in a
+ * {@link LogTextTrackingScrollPane}. Bytes are copied into a ring buffer by the
+ * writing thread, and a background thread decodes them and appends the text to
+ * the pane. Text is shown once it has been flushed; the {@link PrintStream}s of
+ * {@link ConsoleTextPanel} flush on every newline. The writer only waits for
+ * the background thread when the ring is full.
+ * <p>
+ * The bytes are decoded with the platform default charset, which is what a
+ * {@link PrintStream} without explicit encoding writes. Multi-byte characters
+ * that are split over two writes are decoded correctly.
  */
 final class MyOutputStream extends OutputStream {
+	/**
+	 * Size of the ring buffer. Must be a power of two.
+	 */
+	private static final int RING_SIZE = 1 << 16;
+	/**
+	 * Number of bytes decoded at a time.
+	 */
+	private static final int CHUNK_SIZE = 8192;
+
 	private final LogTextTrackingScrollPane consoleoutput;
+	private final byte[] ring = new byte[RING_SIZE];
+	/**
+	 * Number of bytes written. Only changed by the writer.
+	 */
+	private final AtomicLong written = new AtomicLong();
+	/**
+	 * Number of bytes written up to the last flush. Only changed by the
+	 * writer.
+	 */
+	private final AtomicLong flushed = new AtomicLong();
+	/**
+	 * Number of bytes taken by the drainer. Only changed by the drainer.
+	 */
+	private final AtomicLong taken = new AtomicLong();
+	/**
+	 * The writer, while it waits for space in the ring.
+	 */
+	private volatile Thread waitingWriter;
+	private final byte[] single = new byte[1];
+	private final Thread drainer;
 
 	/**
-	 * DOC
+	 * Creates a stream and starts the thread that moves its output to the
+	 * pane.
 	 *
 	 * @param output
+	 *            the pane to show the output in.
 	 */
 	public MyOutputStream(LogTextTrackingScrollPane output) {
 		this.consoleoutput = output;
+		this.drainer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				drain();
+			}
+		}, "Console output"); //$NON-NLS-1$
+		this.drainer.setDaemon(true);
+		this.drainer.start();
 	}
 
-	// maybe messy if two threads print parallel.
-	private static StringBuffer linecache = new StringBuffer();
+	@Override
+	public synchronized void write(int b) {
+		this.single[0] = (byte) b;
+		write(this.single, 0, 1);
+	}
 
 	@Override
-	public void write(int b) throws IOException {
-		linecache = linecache.append((char) b);
-		// PrintStream form ConsoleTextPanel already flushes on newline
-		// characters
+	public synchronized void write(byte[] b, int off, int len) {
+		if (off < 0 || len < 0 || off + len > b.length) {
+			throw new IndexOutOfBoundsException();
+		}
+		while (len > 0) {
+			long end = this.written.get();
+			int free = RING_SIZE - (int) (end - this.taken.get());
+			if (free == 0) {
+				// let the drainer empty the ring, even if not flushed.
+				this.flushed.set(end);
+				this.waitingWriter = Thread.currentThread();
+				LockSupport.unpark(this.drainer);
+				if (RING_SIZE - (int) (end - this.taken.get()) == 0) {
+					LockSupport.park(this);
+				}
+				this.waitingWriter = null;
+				continue;
+			}
+			int count = Math.min(len, free);
+			int start = (int) end & (RING_SIZE - 1);
+			int first = Math.min(count, RING_SIZE - start);
+			System.arraycopy(b, off, this.ring, start, first);
+			System.arraycopy(b, off + first, this.ring, 0, count - first);
+			this.written.set(end + count);
+			off += count;
+			len -= count;
+		}
 	}
 
 	@Override
-	public void flush() throws IOException {
-		// no need to flush nothing
-		if (linecache.length() == 0) {
-			return;
+	public synchronized void flush() {
+		long end = this.written.get();
+		if (this.flushed.get() != end) {
+			this.flushed.set(end);
+			LockSupport.unpark(this.drainer);
 		}
+	}
 
-		SwingUtilities.invokeLater(new Runnable() {
-			private final String toprint = linecache.toString();
+	/**
+	 * Body of the drainer thread: decodes flushed bytes and appends them to
+	 * the pane, until the JVM exits.
+	 */
+	private void drain() {
+		CharsetDecoder decoder = Charset.defaultCharset().newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		ByteBuffer in = ByteBuffer.allocate(CHUNK_SIZE);
+		CharBuffer out = CharBuffer.allocate(CHUNK_SIZE);
+		StringBuilder text = new StringBuilder();
+		while (true) {
+			long start = this.taken.get();
+			long end = this.flushed.get();
+			if (start == end) {
+				LockSupport.park(this);
+				continue;
+			}
+			while (start < end) {
+				int count = (int) Math.min(end - start, in.remaining());
+				int from = (int) start & (RING_SIZE - 1);
+				int first = Math.min(count, RING_SIZE - from);
+				in.put(this.ring, from, first);
+				in.put(this.ring, 0, count - first);
+				start += count;
+				// free the space for the writer.
+				this.taken.set(start);
+				Thread writer = this.waitingWriter;
+				if (writer != null) {
+					LockSupport.unpark(writer);
+				}
 
-			@Override
-			public void run() {
-				MyOutputStream.this.consoleoutput.append(this.toprint);
+				in.flip();
+				CoderResult result;
+				do {
+					result = decoder.decode(in, out, false);
+					out.flip();
+					text.append(out);
+					out.clear();
+				} while (result.isOverflow());
+				// bytes of an incomplete character stay for the next round.
+				in.compact();
 			}
-		});
-		linecache = new StringBuffer();
+			this.consoleoutput.append(text.toString());
+			text.setLength(0);
+		}
 	}
 }
@@ -25,14 +25,18 @@ import goal.tools.IDEGOALInterpreter;
 import goal.tools.debugger.Channel;
 import goal.tools.debugger.DebugEvent;
 import goal.tools.debugger.DebugObserver;
-import goal.tools.errorhandling.Resources;
-import goal.tools.errorhandling.Warning;
-import goal.tools.errorhandling.WarningStrings;
 import goal.util.Observer;
+import krTools.language.DatabaseFormula;
 
 import java.awt.BorderLayout;
 import java.awt.Color;
 import java.awt.Font;
+import java.awt.event.HierarchyEvent;
+import java.awt.event.HierarchyListener;
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
@@ -50,7 +54,7 @@ import mentalState.BASETYPE;
  * @modified K.Hindriks Panel now owns mental state but no longer agent; TODO:
  *           panel should receive incremental updates for updating panel
  *           contents instead of owning the mental state; see also
- *           {@link #refreshPanelContent()}.
+ *           {@link #renderPanelContent()}.
  */
 public class DatabasePanel extends JPanel implements DebugObserver,
 		Observer<QueryPanel, DatabaseChangedInfo> {
@@ -73,6 +77,44 @@ public class DatabasePanel extends JPanel implements DebugObserver,
 	 */
 	private final JTextArea databaseText;
 	private static final int FONT_SIZE = 12;
+	/**
+	 * Applies only the changes of each refresh to {@link #databaseText}.
+	 */
+	private final IncrementalTextUpdater databaseUpdater;
+	/**
+	 * False until the first refresh, which replaces the initial text and
+	 * should not be highlighted as a change.
+	 */
+	private boolean refreshed = false;
+	/**
+	 * True while this panel is subscribed to the debugger, that is, while it
+	 * is showing. Only used on the Swing thread.
+	 */
+	private boolean subscribed = false;
+	/**
+	 * True once the knowledge base, which never changes, has been copied.
+	 */
+	private volatile boolean knowledgeCopied = false;
+	/**
+	 * The latest copy of the database that has not been rendered yet, or
+	 * null.
+	 */
+	private final AtomicReference<Snapshot> snapshot = new AtomicReference<Snapshot>();
+	/**
+	 * Renders the database in the background and shows it, see
+	 * {@link #renderPanelContent()} and {@link #showPanelContent(String)}.
+	 */
+	private final PanelRefresher refresher = new PanelRefresher() {
+		@Override
+		protected String render() {
+			return renderPanelContent();
+		}
+
+		@Override
+		protected void show(String text) {
+			showPanelContent(text);
+		}
+	};
 
 	/**
 	 * DOC
@@ -97,113 +139,203 @@ public class DatabasePanel extends JPanel implements DebugObserver,
 		this.databaseText.setEditable(false);
 		this.databaseText.setBackground(Color.white);
 		this.databaseText.setFont(new Font("Courier", Font.PLAIN, FONT_SIZE)); //$NON-NLS-1$
+		this.databaseUpdater = new IncrementalTextUpdater(this.databaseText);
 		add(databaseoutput, BorderLayout.CENTER);
 
-		// Add observer to agent's debugger to receive notifications of
-		// relevant changes.
-		switch (datatype) {
+		// Only subscribe to the debugger and render the database while the
+		// panel is showing. A panel that is shown again catches up with one
+		// refresh.
+		addHierarchyListener(new HierarchyListener() {
+			@Override
+			public void hierarchyChanged(HierarchyEvent e) {
+				if ((e.getChangeFlags() & HierarchyEvent.SHOWING_CHANGED) != 0) {
+					showingChanged();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Subscribes to the debugger and refreshes when the panel is shown, and
+	 * unsubscribes when it is hidden, for example when another tab is
+	 * selected. Called on the Swing thread.
+	 */
+	private void showingChanged() {
+		if (isShowing()) {
+			if (!this.subscribed) {
+				this.subscribed = true;
+				subscribe();
+			}
+			refreshFromSwing();
+		} else if (this.subscribed) {
+			this.subscribed = false;
+			this.debugger.unsubscribe(this);
+		}
+	}
+
+	/**
+	 * Adds this panel as observer to the agent's debugger to receive
+	 * notifications of relevant changes.
+	 */
+	private void subscribe() {
+		switch (this.databaseType) {
 		case BELIEFBASE:
-			agent.getController().getDebugger()
-					.subscribe(this, Channel.BB_UPDATES);
+			this.debugger.subscribe(this, Channel.BB_UPDATES);
 			break;
 		case GOALBASE:
-			agent.getController().getDebugger()
-					.subscribe(this, Channel.GB_UPDATES);
-			agent.getController().getDebugger()
-					.subscribe(this, Channel.GOAL_ACHIEVED);
-			agent.getController().getDebugger()
-					.subscribe(this, Channel.GB_CHANGES);
+			this.debugger.subscribe(this, Channel.GB_UPDATES);
+			this.debugger.subscribe(this, Channel.GOAL_ACHIEVED);
+			this.debugger.subscribe(this, Channel.GB_CHANGES);
 			break;
 		case KNOWLEDGEBASE:
 			// No channel to subscribe to because knowledge base does not
 			// change.
 			break;
 		case MAILBOX:
-			agent.getController().getDebugger().subscribe(this, Channel.MAILS);
+			this.debugger.subscribe(this, Channel.MAILS);
 			break;
 		case PERCEPTBASE:
 			// Percept base changes are reported on
 			// Channel.PERCEPTS_CONDITIONAL_VIEW.
-			agent.getController().getDebugger()
-					.subscribe(this, Channel.PERCEPTS_CONDITIONAL_VIEW);
+			this.debugger.subscribe(this, Channel.PERCEPTS_CONDITIONAL_VIEW);
 			break;
 		case EMOTIONBASE:
 			// Percept base changes are reported on
 			// Channel.EMOTIONS_CONDITIONAL_VIEW.
-			agent.getController().getDebugger()
-					.subscribe(this, Channel.EMOTIONS_CONDITIONAL_VIEW);
+			this.debugger.subscribe(this, Channel.EMOTIONS_CONDITIONAL_VIEW);
 			break;
 		}
+	}
 
-		refreshPanelContent();
+	/**
+	 * Copies the database and has the copy rendered in the background.
+	 * Called on the agent's thread while the agent waits for this panel, so
+	 * the copy is consistent. Only references to the formulas are copied;
+	 * they are turned into text by {@link #renderPanelContent()}.
+	 */
+	private void refreshFromAgent() {
+		Snapshot copy = takeSnapshot();
+		if (copy != null) {
+			this.snapshot.set(copy);
+			this.refresher.refresh();
+		}
 	}
 
 	/**
-	 * Refreshes the panel.
-	 *
-	 * TODO: this is really nasty code, we really should not be manipulating
-	 * agent code from here. First, this is another thread, we risk thread
-	 * safety issues (ConcurrentModificationExceptions) Second, if this is
-	 * executed in a timer thread instead of SWING we have multiple threads in
-	 * the GUI, which is bad practice
-	 * (http://java.sun.com/products/jfc/tsc/articles/threads/threads1.html)
-	 */
-	private void refreshPanelContent() {
+	 * Copies the database and has the copy rendered, when this is not asked
+	 * for by the agent. Called on the Swing thread. If the agent is changing
+	 * the database at the same time, nothing is shown; the agent then
+	 * reports the change soon, and a consistent copy is taken.
+	 */
+	private void refreshFromSwing() {
 		try {
-			StringBuffer buffer = new StringBuffer();
-			switch (this.databaseType) {
-			case BELIEFBASE:
-				// ENABLE FOLLOWING TO ALSO GET VIEW OF REAL PROLOG DATABASE
-				// buffer.append("\n----------------------\n");
-				// DatabaseFormula[] forms = beliefbase.getLanguage()
-				// .getInferenceEngine()
-				// .getAllSentences(beliefbase.getDatabase());
-				// for (int i = 0; i < forms.length; i++)
-				// buffer.append(forms[i] + "\n");
-				// mentalstate.getBeliefBase().get(0).getDatabase().showStatistics();
-				// //DEBUG
-			case MAILBOX:
-			case PERCEPTBASE:
-			case EMOTIONBASE:
-				BeliefBase base = this.agent.getController().getRunState()
-						.getMentalState().getOwnBase(this.databaseType);
-				if (base != null) {
-					buffer.append(base.getTheory().toString());
-				}
-				break;
-			case GOALBASE:
-				buffer.append(this.agent.getController().getRunState()
-						.getMentalState().printAttentionStack());
-				/*
-				 * / ENABLE FOLLOWING TO ALSO GET VIEW OF REAL PROLOG GOALBASE
-				 */
-				// for (SingleGoal goal :
-				// mentalstate.getAttentionSet().getGoals()) {
-				// buffer.append("\n-----------" + goal + "-----------\n");
-				// DatabaseFormula[] forms = mentalstate.getAttentionSet()
-				// .getLanguage().getInferenceEngine()
-				// .getAllSentences(goal.getGoalDatabase());
-				// for (int i = 0; i < forms.length; i++)
-				// buffer.append(forms[i] + "\n");
-				// }
-				break;
-			case KNOWLEDGEBASE:
-				// Nothing to do because knowledge base is static and therefore
-				// does not need to be refreshed.
-				return;
-			}
+			refreshFromAgent();
+		} catch (ConcurrentModificationException e) {
+			// wait for notifyBreakpointHit.
+		}
+	}
 
-			// Try to maintain the caret position.
-			int oldCaretPos = this.databaseText.getCaretPosition();
-			this.databaseText.setText(buffer.toString());
-			if (oldCaretPos > buffer.length()) {
-				this.databaseText.setCaretPosition(buffer.length());
-			} else {
-				this.databaseText.setCaretPosition(oldCaretPos);
+	/**
+	 * Copies the references to the contents of the database.
+	 *
+	 * TODO: we really should not be reading agent internals from here.
+	 *
+	 * @return the copy, or null if the database did not change.
+	 */
+	private Snapshot takeSnapshot() {
+		switch (this.databaseType) {
+		case BELIEFBASE:
+			// ENABLE FOLLOWING TO ALSO GET VIEW OF REAL PROLOG DATABASE
+			// buffer.append("\n----------------------\n");
+			// DatabaseFormula[] forms = beliefbase.getLanguage()
+			// .getInferenceEngine()
+			// .getAllSentences(beliefbase.getDatabase());
+			// for (int i = 0; i < forms.length; i++)
+			// buffer.append(forms[i] + "\n");
+			// mentalstate.getBeliefBase().get(0).getDatabase().showStatistics();
+			// //DEBUG
+		case MAILBOX:
+		case PERCEPTBASE:
+		case EMOTIONBASE:
+			BeliefBase base = this.agent.getController().getRunState()
+					.getMentalState().getOwnBase(this.databaseType);
+			if (base == null) {
+				return new Snapshot(new ArrayList<DatabaseFormula>(0));
 			}
-		} catch (Exception e) {
-			new Warning(Resources.get(WarningStrings.FAILED_AWT_REFRESH_PANEL),
-					e);
+			return new Snapshot(new ArrayList<DatabaseFormula>(base
+					.getTheory().getFormulas()));
+		case GOALBASE:
+			// the goals are spread over the goal bases of the attention
+			// stack, and are few. They are printed right away.
+			return new Snapshot(this.agent.getController().getRunState()
+					.getMentalState().printAttentionStack());
+			/*
+			 * / ENABLE FOLLOWING TO ALSO GET VIEW OF REAL PROLOG GOALBASE
+			 */
+			// for (SingleGoal goal :
+			// mentalstate.getAttentionSet().getGoals()) {
+			// buffer.append("\n-----------" + goal + "-----------\n");
+			// DatabaseFormula[] forms = mentalstate.getAttentionSet()
+			// .getLanguage().getInferenceEngine()
+			// .getAllSentences(goal.getGoalDatabase());
+			// for (int i = 0; i < forms.length; i++)
+			// buffer.append(forms[i] + "\n");
+			// }
+		case KNOWLEDGEBASE:
+			// The knowledge base is static and therefore only needs to be
+			// rendered once.
+			if (this.knowledgeCopied) {
+				return null;
+			}
+			List<DatabaseFormula> knowledge = new ArrayList<DatabaseFormula>();
+			for (DatabaseFormula formula : this.agent.getController()
+					.getProgram().getAllKnowledge()) {
+				knowledge.add(formula);
+			}
+			this.knowledgeCopied = true;
+			return new Snapshot(knowledge);
+		}
+		return null;
+	}
+
+	/**
+	 * Renders the latest copy of the database. Called on the background
+	 * thread of {@link #refresher}, while the agent keeps running.
+	 *
+	 * @return the contents, or null if there is no new copy.
+	 */
+	private String renderPanelContent() {
+		Snapshot copy = this.snapshot.getAndSet(null);
+		if (copy == null) {
+			return null;
+		}
+		if (copy.text != null) {
+			return copy.text;
+		}
+		StringBuilder buffer = new StringBuilder();
+		for (DatabaseFormula formula : copy.formulas) {
+			buffer.append(formula.toString());
+			buffer.append(".\n"); //$NON-NLS-1$
+		}
+		return buffer.toString();
+	}
+
+	/**
+	 * Shows rendered contents. Only the lines that changed since the last
+	 * refresh are replaced in the text area, and the new lines are
+	 * highlighted, so the text area does not lay out the whole base again.
+	 * Called on the Swing thread.
+	 *
+	 * @param text
+	 *            the contents of the database.
+	 */
+	private void showPanelContent(String text) {
+		// Try to maintain the caret position.
+		int oldCaretPos = this.databaseText.getCaretPosition();
+		this.databaseUpdater.setText(text, this.refreshed);
+		this.refreshed = true;
+		if (oldCaretPos > text.length()) {
+			this.databaseText.setCaretPosition(text.length());
 		}
 	}
 
@@ -214,11 +346,12 @@ public class DatabasePanel extends JPanel implements DebugObserver,
 
 	@Override
 	public void notifyBreakpointHit(DebugEvent event) {
-		refreshPanelContent();
+		refreshFromAgent();
 	}
 
 	@Override
 	public void removeNotify() {
+		this.subscribed = false;
 		this.debugger.unsubscribe(this);
 
 		System.out.println("unsubscribed " + getObserverName()); //$NON-NLS-1$
@@ -230,6 +363,28 @@ public class DatabasePanel extends JPanel implements DebugObserver,
 	 */
 	@Override
 	public void eventOccured(QueryPanel source, DatabaseChangedInfo evt) {
-		refreshPanelContent();
+		// a hidden panel refreshes when it is shown.
+		if (isShowing()) {
+			refreshFromSwing();
+		}
+	}
+
+	/**
+	 * The contents of the database at one moment: either the formulas, or
+	 * text that was already printed.
+	 */
+	private static final class Snapshot {
+		private final List<DatabaseFormula> formulas;
+		private final String text;
+
+		Snapshot(List<DatabaseFormula> formulas) {
+			this.formulas = formulas;
+			this.text = null;
+		}
+
+		Snapshot(String text) {
+			this.formulas = null;
+			this.text = text;
+		}
 	}
 }
@@ -33,6 +33,7 @@ import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 
 import languageTools.program.agent.AgentId;
+import nl.tudelft.goal.SimpleIDE.preferences.IntrospectorPreferences;
 
 /**
  * <p>
@@ -80,7 +81,7 @@ public final class DebugTextPanel extends LogTextTrackingScrollPane implements
 	 *            panel.
 	 */
 	public DebugTextPanel(Agent<IDEGOALInterpreter> agent) {
-		super("");
+		super("", IntrospectorPreferences.getMaxLines(), true);
 
 		this.agentId = agent.getId();
 
@@ -578,18 +578,18 @@ public class EditManager extends JPanel {
 			return;
 		}
 
-		// set the actual breakpoints in the editor
-		// first remove all old ones
-		for (BreakPoint oldBP : breakpoints) {
-			editor.removeBreakpoint(oldBP);
-		}
-		// then add all new ones, but only if there are any
+		// set the actual breakpoints in the editor. Only the breakpoints
+		// that moved are changed.
+		Set<BreakPoint> actualBreakpoints = new HashSet<BreakPoint>(
+				realBreakpoints.size());
 		for (SourceInfo newBP : realBreakpoints) {
 			// HACK. We need to keep the type intact!!
-			editor.setBreakpoint(new BreakPoint(file, newBP.getLineNumber(),
+			actualBreakpoints.add(new BreakPoint(file,
+					newBP.getLineNumber(),
 					newBP instanceof ActionCombo ? Type.CONDITIONAL
 							: Type.ALWAYS));
 		}
+		editor.setBreakpoints(actualBreakpoints);
 		// make sure to visually update the breakpoints as well
 		editor.repaint();
 	}
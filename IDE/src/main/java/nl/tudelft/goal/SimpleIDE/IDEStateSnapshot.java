@@ -0,0 +1,133 @@
+/**
+ * GOAL interpreter that facilitates developing and executing GOAL multi-agent
+ * programs. Copyright (C) 2011 K.V. Hindriks, W. Pasman
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nl.tudelft.goal.SimpleIDE;
+
+import goal.tools.debugger.SteppingDebugger.RunMode;
+
+import java.awt.Component;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An {@link IDEState} that is given to all actions when
+ * {@link ActionFactory#broadcastStateChange(IDEState)} updates them. While the
+ * actions are updated, each question is answered once by the real state and
+ * the answer is shared by all actions. Afterwards, all questions are passed on
+ * to the real state again, so an action that keeps this as its current state
+ * still sees the live state when it is executed.
+ */
+public class IDEStateSnapshot implements IDEState {
+	private final IDEState state;
+	private boolean frozen = false;
+	private List<? extends IDENode> selectedNodes;
+	private Integer viewMode;
+	private Boolean runtimeEnvironmentAvailable;
+	private final Map<ProcessNode, RunMode> runModes = new IdentityHashMap<ProcessNode, RunMode>();
+
+	/**
+	 * @param state
+	 *            the real state. If this is a snapshot itself, its real state
+	 *            is used.
+	 */
+	IDEStateSnapshot(IDEState state) {
+		if (state instanceof IDEStateSnapshot) {
+			state = ((IDEStateSnapshot) state).state;
+		}
+		this.state = state;
+	}
+
+	/**
+	 * Starts remembering answers.
+	 */
+	synchronized void freeze() {
+		this.frozen = true;
+	}
+
+	/**
+	 * Forgets all answers, and passes all questions on from now on.
+	 */
+	synchronized void release() {
+		this.frozen = false;
+		this.selectedNodes = null;
+		this.viewMode = null;
+		this.runtimeEnvironmentAvailable = null;
+		this.runModes.clear();
+	}
+
+	@Override
+	public Component getRootComponent() {
+		return this.state.getRootComponent();
+	}
+
+	@Override
+	public synchronized List<? extends IDENode> getSelectedNodes() {
+		if (!this.frozen) {
+			return this.state.getSelectedNodes();
+		}
+		if (this.selectedNodes == null) {
+			this.selectedNodes = this.state.getSelectedNodes();
+		}
+		return this.selectedNodes;
+	}
+
+	@Override
+	public synchronized int getViewMode() {
+		if (!this.frozen) {
+			return this.state.getViewMode();
+		}
+		if (this.viewMode == null) {
+			this.viewMode = this.state.getViewMode();
+		}
+		return this.viewMode;
+	}
+
+	@Override
+	public synchronized boolean isRuntimeEnvironmentAvailable() {
+		if (!this.frozen) {
+			return this.state.isRuntimeEnvironmentAvailable();
+		}
+		if (this.runtimeEnvironmentAvailable == null) {
+			this.runtimeEnvironmentAvailable = this.state
+					.isRuntimeEnvironmentAvailable();
+		}
+		return this.runtimeEnvironmentAvailable;
+	}
+
+	/**
+	 * Returns the run mode of a process node. Computing the run mode of a MAS
+	 * node visits all its agents, so while the actions are updated it is
+	 * computed once per node.
+	 *
+	 * @param node
+	 *            the process node.
+	 * @return see {@link ProcessNode#getProcessRunMode()}.
+	 */
+	public synchronized RunMode getProcessRunMode(ProcessNode node) {
+		if (!this.frozen) {
+			return node.getProcessRunMode();
+		}
+		RunMode mode = this.runModes.get(node);
+		if (mode == null) {
+			mode = node.getProcessRunMode();
+			this.runModes.put(node, mode);
+		}
+		return mode;
+	}
+}
@@ -0,0 +1,258 @@
+/**
+ * GOAL interpreter that facilitates developing and executing GOAL multi-agent
+ * programs. Copyright (C) 2011 K.V. Hindriks, W. Pasman
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nl.tudelft.goal.SimpleIDE;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.JTextArea;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.DefaultHighlighter;
+import javax.swing.text.Highlighter;
+
+/**
+ * Keeps the text of a {@link JTextArea} equal to a text that is given again
+ * and again, such as the contents of a mental state base. Instead of replacing
+ * all text, which makes the text area lay out the whole document again, only
+ * the lines that differ from the previous text are replaced. The lines that
+ * were inserted by the last update are highlighted.
+ * <p>
+ * The differences are found with Myers' algorithm, which takes time
+ * proportional to the size of the text times the number of differences. When
+ * there are very many differences, the changed part is replaced as a whole.
+ */
+final class IncrementalTextUpdater {
+	/**
+	 * Above this number of inserted and deleted lines, the changed part of
+	 * the text is replaced as a whole.
+	 */
+	private static final int MAX_EDITS = 500;
+	private static final Highlighter.HighlightPainter CHANGE_PAINTER = new DefaultHighlighter.DefaultHighlightPainter(
+			new Color(255, 255, 200));
+
+	private final JTextArea textArea;
+	/**
+	 * The lines of the current text, each with its newline. The last line
+	 * has no newline, and may be empty.
+	 */
+	private String[] lines;
+	/**
+	 * Highlights of the lines inserted by the last update.
+	 */
+	private final List<Object> highlights = new ArrayList<Object>();
+
+	/**
+	 * @param textArea
+	 *            the text area to update. Its current text is the text that
+	 *            the first update is compared with.
+	 */
+	IncrementalTextUpdater(JTextArea textArea) {
+		this.textArea = textArea;
+		this.lines = split(textArea.getText());
+	}
+
+	/**
+	 * Changes the text of the text area to the given text.
+	 *
+	 * @param text
+	 *            the new text.
+	 * @param highlight
+	 *            true to highlight the inserted lines.
+	 */
+	void setText(String text, boolean highlight) {
+		String[] newLines = split(text);
+		clearHighlights();
+
+		// the lines that are equal at the start and at the end are common
+		// in all but pathological cases, and are cheap to skip.
+		int start = 0;
+		int oldEnd = this.lines.length;
+		int newEnd = newLines.length;
+		while (start < oldEnd && start < newEnd
+				&& this.lines[start].equals(newLines[start])) {
+			start++;
+		}
+		while (oldEnd > start && newEnd > start
+				&& this.lines[oldEnd - 1].equals(newLines[newEnd - 1])) {
+			oldEnd--;
+			newEnd--;
+		}
+
+		List<int[]> hunks = diff(this.lines, start, oldEnd, newLines, start,
+				newEnd);
+		if (hunks == null) {
+			hunks = new ArrayList<int[]>(1);
+			hunks.add(new int[] { start, oldEnd, start, newEnd });
+		}
+
+		try {
+			// from the end, so the offsets of the hunks before stay valid.
+			for (int i = hunks.size() - 1; i >= 0; i--) {
+				int[] hunk = hunks.get(i);
+				int from = this.textArea.getLineStartOffset(hunk[0]);
+				int to = from;
+				for (int line = hunk[0]; line < hunk[1]; line++) {
+					to += this.lines[line].length();
+				}
+				StringBuilder inserted = new StringBuilder();
+				for (int line = hunk[2]; line < hunk[3]; line++) {
+					inserted.append(newLines[line]);
+				}
+				this.textArea.replaceRange(inserted.toString(), from, to);
+				if (highlight && inserted.length() > 0) {
+					this.highlights.add(this.textArea.getHighlighter()
+							.addHighlight(from, from + inserted.length(),
+									CHANGE_PAINTER));
+				}
+			}
+		} catch (BadLocationException e) {
+			// the text area was changed by someone else.
+			clearHighlights();
+			this.textArea.setText(text);
+		}
+		this.lines = newLines;
+	}
+
+	/**
+	 * Removes the highlights of the last update.
+	 */
+	private void clearHighlights() {
+		for (Object tag : this.highlights) {
+			this.textArea.getHighlighter().removeHighlight(tag);
+		}
+		this.highlights.clear();
+	}
+
+	/**
+	 * Splits a text into lines, the way a text area does.
+	 *
+	 * @return the lines, each with its newline except the last one.
+	 */
+	private static String[] split(String text) {
+		List<String> lines = new ArrayList<String>();
+		int start = 0;
+		int end;
+		while ((end = text.indexOf('\n', start)) != -1) {
+			lines.add(text.substring(start, end + 1));
+			start = end + 1;
+		}
+		lines.add(text.substring(start));
+		return lines.toArray(new String[lines.size()]);
+	}
+
+	/**
+	 * Finds the differences between two ranges of lines with Myers' O(ND)
+	 * algorithm.
+	 *
+	 * @return the hunks in order, each as {old start, old end, new start,
+	 *         new end}. Null if there are more than {@link #MAX_EDITS}
+	 *         inserted and deleted lines.
+	 */
+	static List<int[]> diff(String[] a, int aStart, int aEnd, String[] b,
+			int bStart, int bEnd) {
+		int n = aEnd - aStart;
+		int m = bEnd - bStart;
+		int max = Math.min(n + m, MAX_EDITS);
+		int offset = max + 1;
+		// v[k + offset] is the furthest x on diagonal k = x - y.
+		int[] v = new int[2 * max + 3];
+		// trace.get(d) is v before step d, for k in [-(d-1), d-1].
+		List<int[]> trace = new ArrayList<int[]>();
+		int edits = -1;
+		search: for (int d = 0; d <= max; d++) {
+			if (d > 0) {
+				int[] saved = new int[2 * d - 1];
+				System.arraycopy(v, offset - d + 1, saved, 0, saved.length);
+				trace.add(saved);
+			} else {
+				trace.add(null);
+			}
+			for (int k = -d; k <= d; k += 2) {
+				int x;
+				if (k == -d || k != d && v[k - 1 + offset] < v[k + 1 + offset]) {
+					x = v[k + 1 + offset];
+				} else {
+					x = v[k - 1 + offset] + 1;
+				}
+				int y = x - k;
+				while (x < n && y < m && a[aStart + x].equals(b[bStart + y])) {
+					x++;
+					y++;
+				}
+				v[k + offset] = x;
+				if (x >= n && y >= m) {
+					edits = d;
+					break search;
+				}
+			}
+		}
+		if (edits == -1) {
+			return null;
+		}
+
+		// walk back from the end to mark the deleted and inserted lines.
+		boolean[] deleted = new boolean[n];
+		boolean[] inserted = new boolean[m];
+		int x = n;
+		int y = m;
+		for (int d = edits; d > 0; d--) {
+			int[] previous = trace.get(d);
+			int k = x - y;
+			int previousK;
+			if (k == -d || k != d
+					&& previous[k - 1 + d - 1] < previous[k + 1 + d - 1]) {
+				previousK = k + 1;
+			} else {
+				previousK = k - 1;
+			}
+			int previousX = previous[previousK + d - 1];
+			int previousY = previousX - previousK;
+			if (previousK == k + 1) {
+				inserted[previousY] = true;
+			} else {
+				deleted[previousX] = true;
+			}
+			x = previousX;
+			y = previousY;
+		}
+
+		List<int[]> hunks = new ArrayList<int[]>();
+		int i = 0;
+		int j = 0;
+		while (i < n || j < m) {
+			if (i < n && j < m && !deleted[i] && !inserted[j]) {
+				i++;
+				j++;
+				continue;
+			}
+			int hunkA = i;
+			int hunkB = j;
+			while (i < n && deleted[i]) {
+				i++;
+			}
+			while (j < m && inserted[j]) {
+				j++;
+			}
+			hunks.add(new int[] { aStart + hunkA, aStart + i, bStart + hunkB,
+					bStart + j });
+		}
+		return hunks;
+	}
+}
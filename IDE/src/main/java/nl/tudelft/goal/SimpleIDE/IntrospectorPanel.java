@@ -36,7 +36,6 @@ import javax.swing.JPanel;
 import javax.swing.JSplitPane;
 import javax.swing.JTabbedPane;
 
-import krTools.language.DatabaseFormula;
 import languageTools.program.agent.AgentId;
 import mentalState.BASETYPE;
 import nl.tudelft.goal.SimpleIDE.preferences.IntrospectorPreferences;
@@ -168,6 +167,8 @@ PropertyChangeListener, DebugObserver {
 /**
  * Displays the various components of an agent's mental state in different tabs,
  * including the agent's beliefs, goals, mails, percepts, emotions, and knowledge.
+ * Each tab only follows the agent's debugger and renders its contents while it
+ * is showing, see {@link DatabasePanel}.
  */
 class MentalComponentsPanel extends JTabbedPane {
 	/**
@@ -186,16 +187,6 @@ class MentalComponentsPanel extends JTabbedPane {
 	 *            The agent associated with the panel.
 	 */
 	public MentalComponentsPanel(Agent<IDEGOALInterpreter> agent) {
-		// Get agent with ID agentId
-		// convert knowledge from array to string
-		Iterable<DatabaseFormula> knowledgebase = agent.getController()
-				.getProgram().getAllKnowledge();
-		StringBuffer kbtext = new StringBuffer();
-		for (DatabaseFormula formula : knowledgebase) {
-			kbtext.append(formula.toString());
-			kbtext.append(".\n");
-		}
-
 		// The database panels.
 		this.beliefs = new DatabasePanel(agent, BASETYPE.BELIEFBASE, INITTEXT);
 		this.goals = new DatabasePanel(agent, BASETYPE.GOALBASE, INITTEXT);
@@ -203,7 +194,7 @@ class MentalComponentsPanel extends JTabbedPane {
 		this.percepts = new DatabasePanel(agent, BASETYPE.PERCEPTBASE, INITTEXT);
 		this.emotions = new DatabasePanel(agent, BASETYPE.EMOTIONBASE, INITTEXT);
 		this.knowledge = new DatabasePanel(agent, BASETYPE.KNOWLEDGEBASE,
-				kbtext.toString());
+				INITTEXT);
 
 		this.add("Beliefs", this.beliefs);
 		this.add("Goals", this.goals);
@@ -33,7 +33,9 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.File;
 import java.io.IOException;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 import javax.swing.JButton;
@@ -50,10 +52,12 @@ import org.gjt.sp.jedit.ViewSubstitute;
 import org.gjt.sp.jedit.jEdit;
 import org.gjt.sp.jedit.buffer.Breakpoint;
 import org.gjt.sp.jedit.buffer.JEditBuffer;
+import org.gjt.sp.jedit.bufferio.JEditBufferLoader;
 import org.gjt.sp.jedit.guistandalone.CompleteWord;
 import org.gjt.sp.jedit.options.TextAreaOptionPane;
 import org.gjt.sp.jedit.searchstandalone.SearchAndReplace;
 import org.gjt.sp.jedit.searchstandalone.SearchDialog;
+import org.gjt.sp.jedit.syntax.Chunk;
 import org.gjt.sp.jedit.syntax.ModeProvider;
 import org.gjt.sp.jedit.syntax.SyntaxStyle;
 import org.gjt.sp.jedit.textarea.AntiAlias;
@@ -81,6 +85,10 @@ public final class JEditTextEditor extends TextEditorInterface {
 	private ViewSubstitute view;
 	private static final String FILE_KEY = "file";
 	private static final int UNDO_LIMIT = 100;
+	/**
+	 * Memory the undo history of an editor may use, in bytes.
+	 */
+	private static final long UNDO_MEMORY_LIMIT = 16L * 1024 * 1024;
 
 	/**
 	 * @param filename
@@ -91,7 +99,7 @@ public final class JEditTextEditor extends TextEditorInterface {
 
 		this.view = new ViewSubstitute();
 
-		jEdit.initSystemProperties();
+		jEdit.initSystemPropertiesIfNecessary();
 		/*
 		 * this creates stand-alone text area.
 		 */
@@ -103,35 +111,22 @@ public final class JEditTextEditor extends TextEditorInterface {
 
 		Extension ext = Extension.getFileExtension(filename);
 		if (ext == null) {
-			mode = new Mode("plaintext");
-			mode.setProperty(FILE_KEY, "modes/plaintext.xml");
-			ModeProvider.instance.addMode(mode);
+			mode = getMode("plaintext");
 		} else {
 			switch (ext) {
 			case MAS:
-				mode = new Mode("mas");
-				mode.setProperty(FILE_KEY, "modes/mas.xml");
-				ModeProvider.instance.addMode(mode);
+				mode = getMode("mas");
 				break;
 			case GOAL:
 			case MODULES:
-				Mode prologmode = new Mode("prolog");
-				prologmode.setProperty(FILE_KEY, "modes/prolog.xml");
-				ModeProvider.instance.addMode(prologmode);
-
-				mode = new Mode("goal");
-				mode.setProperty(FILE_KEY, "modes/goal.xml");
-				ModeProvider.instance.addMode(mode);
+				getMode("prolog"); // goal.xml delegates to prolog.
+				mode = getMode("goal");
 				break;
 			case EMOTION:
-				mode = new Mode("emotion");
-				mode.setProperty(FILE_KEY, "modes/emotion.xml");
-				ModeProvider.instance.addMode(mode);
+				mode = getMode("emotion");
 				break;
 			case PROLOG:
-				mode = new Mode("prolog");
-				mode.setProperty(FILE_KEY, "modes/prolog.xml");
-				ModeProvider.instance.addMode(mode);
+				mode = getMode("prolog");
 				break;
 			default:
 				new GOALBug("Unknown/unhandled extension " + ext);
@@ -139,13 +134,13 @@ public final class JEditTextEditor extends TextEditorInterface {
 			}
 		}
 
-		getTextArea().getBuffer().setUndoLimit(0); // HACK, see trac 630.
-		// disable Undo of
-		// load-file.
-		getTextArea().getBuffer().insert(0, readFile(filename));
+		// loading bypasses the undo manager, so the load itself can not be
+		// undone (trac 630).
+		loadFile(filename);
 		getTextArea().getBuffer().setUndoLimit(UNDO_LIMIT); // trac 630. default
 		// seems
 		// 100.
+		getTextArea().getBuffer().setUndoMemoryLimit(UNDO_MEMORY_LIMIT);
 		getTextArea().getBuffer().setDirty(false); // not dirty, we now match
 		// the file.
 		getTextArea().getBuffer().setMode(mode);
@@ -158,6 +153,25 @@ public final class JEditTextEditor extends TextEditorInterface {
 		// setupObserver(text);
 	}
 
+	/**
+	 * Returns the shared edit mode with the given name. The mode is registered
+	 * with the {@link ModeProvider} when it is first asked for; after that all
+	 * editors get the same instance, so its mode file is parsed only once.
+	 *
+	 * @param name
+	 *            the name of the mode. The mode file is modes/name.xml.
+	 * @return the registered mode.
+	 */
+	private static Mode getMode(String name) {
+		Mode mode = ModeProvider.instance.getMode(name);
+		if (mode == null) {
+			mode = new Mode(name);
+			mode.setProperty(FILE_KEY, "modes/" + name + ".xml");
+			mode = ModeProvider.instance.addMode(mode);
+		}
+		return mode;
+	}
+
 	@Override
 	public void save() throws IOException {
 		saveAs(getFilename()); // use the initial filename.
@@ -166,7 +180,8 @@ public final class JEditTextEditor extends TextEditorInterface {
 	@Override
 	public void saveAs(String filename) throws IOException {
 		JEditBuffer buffer = this.view.getBuffer();
-		writeFile(filename, buffer.getText(0, buffer.getLength()));
+		writeFile(filename, buffer.getText(0, buffer.getLength()),
+				buffer.getStringProperty(JEditBuffer.ENCODING));
 		this.view.getBuffer().setDirty(false);
 		setFileName(filename);
 	}
@@ -253,6 +268,9 @@ public final class JEditTextEditor extends TextEditorInterface {
 						+ choice);
 			}
 		}
+		// the text area is not shown again. This detaches it from the
+		// buffer, which stops the buffer from being tokenized ahead.
+		getTextArea().dispose();
 	}
 
 	@Override
@@ -260,13 +278,26 @@ public final class JEditTextEditor extends TextEditorInterface {
 
 		// OK, confirmation received. reload.
 		// No need to check time etc, just reload.
-		this.view.getBuffer().insert(0, readFile(getFilename()));
+		loadFile(getFilename());
 		this.view.getBuffer().setDirty(false); // not dirty, we now match the
 		// file.
 		goToLine(0); // otherwise we would get at the last line (TRAC 523), as
 		// result of the insert.
 	}
 
+	/**
+	 * Replaces the buffer content with the content of the given file.
+	 *
+	 * @param filename
+	 *            the file to load.
+	 * @throws IOException
+	 *             if the file does not exist or can not be read.
+	 */
+	private void loadFile(String filename) throws IOException {
+		ensureFileExists(filename);
+		JEditBufferLoader.load(getTextArea().getBuffer(), new File(filename));
+	}
+
 	@Override
 	public void print() {
 		ModifiedBufferPrinter1_4.print(this.view, this.view.getBuffer(), false);
@@ -395,6 +426,8 @@ public final class JEditTextEditor extends TextEditorInterface {
 														 */
 				};
 
+				// text laid out with the old fonts is not used any more
+				Chunk.clearGlyphCache();
 				getTextArea().getPainter().setStyles(styles);
 				getTextArea().getPainter().setAntiAlias(
 						new AntiAlias(EditorPreferences.isAntiAliased()));
@@ -434,22 +467,40 @@ public final class JEditTextEditor extends TextEditorInterface {
 	@Override
 	public void setBreakpoint(BreakPoint breakpoint)
 			throws ArrayIndexOutOfBoundsException {
-		Breakpoint.Type type;
+		Breakpoint.Type type = getJEditType(breakpoint);
+		// #3238 GOAL bpts are 1=based, our bpts are 0-based
+		int line = this.view.getBuffer().getLineStartOffset(
+				breakpoint.getLine() - 1);
+		this.view.getBuffer().getBreakpoints().addBreakpoint(line, type);
+	}
+
+	@Override
+	public void setBreakpoints(Set<BreakPoint> breakpoints) {
+		Map<Integer, Breakpoint.Type> lines = new HashMap<Integer, Breakpoint.Type>();
+		for (BreakPoint breakpoint : breakpoints) {
+			// #3238 GOAL bpts are 1=based, our bpts are 0-based
+			lines.put(breakpoint.getLine() - 1, getJEditType(breakpoint));
+		}
+		this.view.getBuffer().getBreakpoints().setBreakpoints(lines);
+	}
+
+	/**
+	 * translate a GOAL breakpoint type to a jEdit one.
+	 *
+	 * @param breakpoint
+	 *            the GOAL breakpoint.
+	 * @return the jEdit type of the breakpoint.
+	 */
+	private static Breakpoint.Type getJEditType(BreakPoint breakpoint) {
 		switch (breakpoint.getType()) {
 		case ALWAYS:
-			type = Breakpoint.Type.ALWAYS;
-			break;
+			return Breakpoint.Type.ALWAYS;
 		case CONDITIONAL:
-			type = Breakpoint.Type.CONDITIONAL;
-			break;
+			return Breakpoint.Type.CONDITIONAL;
 		default:
 			throw new IllegalArgumentException("unknown breakpoint type "
 					+ breakpoint.getType());
 		}
-		// #3238 GOAL bpts are 1=based, our bpts are 0-based
-		int line = this.view.getBuffer().getLineStartOffset(
-				breakpoint.getLine() - 1);
-		this.view.getBuffer().getBreakpoints().addBreakpoint(line, type);
 	}
 
 	@Override
@@ -23,8 +23,8 @@ import goal.tools.logging.GOALBufferedHandler;
 import goal.tools.logging.GOALLogRecord;
 import goal.tools.logging.GOALLogger;
 
-import java.sql.Date;
 import java.text.SimpleDateFormat;
+import java.util.Date;
 import java.util.logging.Formatter;
 import java.util.logging.Handler;
 import java.util.logging.Level;
@@ -61,7 +61,21 @@ public class LogTextTrackingScrollPane extends TextTrackingScrollPane {
 	}
 
 	public LogTextTrackingScrollPane(String initialText, int maxLines) {
-		super(initialText, maxLines);
+		this(initialText, maxLines, false);
+	}
+
+	/**
+	 * @param initialText
+	 *            initial text of the pane.
+	 * @param maxLines
+	 *            maximum number of lines stored by the pane.
+	 * @param ringBuffer
+	 *            true to keep the text in a {@link RingBufferDocument}, see
+	 *            {@link TextTrackingScrollPane#TextTrackingScrollPane(String, int, boolean)}
+	 */
+	public LogTextTrackingScrollPane(String initialText, int maxLines,
+			boolean ringBuffer) {
+		super(initialText, maxLines, ringBuffer);
 		// buffer any incoming log messages, and display them only
 		// when nothing is running
 		// buffer only maxlines messages. Usually there is one line per message,
@@ -129,21 +143,39 @@ public class LogTextTrackingScrollPane extends TextTrackingScrollPane {
 	 * {@link Formatter} prescribed by the given {@link GOALLogRecord}. If a
 	 * {@link LogRecord} is given that is not a {@link GOALLogRecord}, its raw
 	 * message is displayed.
+	 * <p>
+	 * Records are written straight into the text that waits to be shown, so
+	 * apart from the message made by the formatter, publishing a record does
+	 * not allocate. The time is formatted once per second, and the head and
+	 * tail once per formatter.
 	 *
 	 * @author N.Kraayenbrink
 	 *
 	 */
-	private class TextPaneHandler extends Handler {
-
+	private class TextPaneHandler extends Handler implements PendingTextWriter {
 		/**
-		 * A buffer for the lines to be appended, so that it is not necessary to
-		 * append all lines separately.
+		 * Formats the time of a record up to the milliseconds.
 		 */
-		private StringBuffer lineBuffer;
-
-		public TextPaneHandler() {
-			this.lineBuffer = new StringBuffer();
-		}
+		private final SimpleDateFormat clockFormatter = new SimpleDateFormat(
+				"H:mm:ss:"); //$NON-NLS-1$
+		/**
+		 * The second of which {@link #clock} is the formatted time.
+		 */
+		private long clockSecond = Long.MIN_VALUE;
+		private String clock;
+		/**
+		 * The formatter that {@link #head} and {@link #tail} were made by.
+		 */
+		private Formatter headFormatter;
+		private String head;
+		private String tail;
+		/**
+		 * The record being published, for {@link #writeTo(StringBuilder)}.
+		 */
+		private long millis;
+		private boolean showTime;
+		private Formatter recordFormatter;
+		private String message;
 
 		@Override
 		public void close() {
@@ -152,18 +184,14 @@ public class LogTextTrackingScrollPane extends TextTrackingScrollPane {
 
 		@Override
 		public void flush() {
-			if (this.lineBuffer.length() == 0) {
-				return;
-			}
-			append(this.lineBuffer.toString());
-			this.lineBuffer = new StringBuffer();
+			// records are appended when they are published
 		}
 
+		/**
+		 * Synchronized, as the fields are reused for each record.
+		 */
 		@Override
-		public void publish(LogRecord record) {
-			String text = "";
-			final SimpleDateFormat timeFormatter = new SimpleDateFormat(
-					"H:mm:ss:SSS");
+		public synchronized void publish(LogRecord record) {
 			Formatter f = null;
 			if (!(record instanceof GOALLogRecord)) {
 				if (getFormatter() != null) {
@@ -172,18 +200,47 @@ public class LogTextTrackingScrollPane extends TextTrackingScrollPane {
 			} else {
 				f = ((GOALLogRecord) record).getFormatter();
 			}
-			if (LoggingPreferences.getShowTime()) {
-				Date date = new Date(record.getMillis());
-				text += timeFormatter.format(date) + " ";
-			}
 			if (f != null) {
-				text += f.getHead(this) + f.format(record) + f.getTail(this);
+				if (f != this.headFormatter) {
+					this.head = f.getHead(this);
+					this.tail = f.getTail(this);
+					this.headFormatter = f;
+				}
+				this.message = f.format(record);
 			} else {
-				text += record.getMessage();
+				this.message = record.getMessage();
 			}
-			append(text);
-			if (record.getLevel().intValue() > getLevel().intValue()) {
-				flush();
+			this.recordFormatter = f;
+			this.showTime = LoggingPreferences.getShowTime();
+			this.millis = record.getMillis();
+			append(this);
+			this.message = null;
+		}
+
+		/**
+		 * Writes the record being published as "H:mm:ss:SSS message".
+		 */
+		@Override
+		public void writeTo(StringBuilder pending) {
+			if (this.showTime) {
+				long second = this.millis / 1000;
+				if (second != this.clockSecond) {
+					this.clock = this.clockFormatter.format(new Date(
+							second * 1000));
+					this.clockSecond = second;
+				}
+				int ms = (int) (this.millis % 1000);
+				pending.append(this.clock);
+				pending.append((char) ('0' + ms / 100));
+				pending.append((char) ('0' + ms / 10 % 10));
+				pending.append((char) ('0' + ms % 10));
+				pending.append(' ');
+			}
+			if (this.recordFormatter != null) {
+				pending.append(this.head).append(this.message)
+						.append(this.tail);
+			} else {
+				pending.append(this.message);
 			}
 		}
 	}
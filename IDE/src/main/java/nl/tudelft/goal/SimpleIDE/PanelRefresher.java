@@ -0,0 +1,134 @@
+/**
+ * GOAL interpreter that facilitates developing and executing GOAL multi-agent
+ * programs. Copyright (C) 2011 K.V. Hindriks, W. Pasman
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nl.tudelft.goal.SimpleIDE;
+
+import goal.tools.errorhandling.Resources;
+import goal.tools.errorhandling.Warning;
+import goal.tools.errorhandling.WarningStrings;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.swing.SwingUtilities;
+
+import nl.tudelft.goal.SimpleIDE.preferences.IntrospectorPreferences;
+
+/**
+ * Refreshes the contents of a panel of an introspector without holding up the
+ * agent. {@link #refresh()} only marks the panel as out of date and returns.
+ * The contents are then rendered on a background thread shared by all
+ * introspectors, and shown on the Swing thread. Refreshes that are asked for
+ * while one is pending are done together, and no more than one refresh per
+ * {@link IntrospectorPreferences#getRefreshInterval()} is done.
+ * <p>
+ * The agent keeps running while the contents are rendered, so
+ * {@link #render()} may only read data that the agent no longer changes, such
+ * as a copy of a base that was taken while the agent was blocked.
+ */
+abstract class PanelRefresher {
+	private static final ScheduledExecutorService executor = Executors
+			.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "Introspector refresh"); //$NON-NLS-1$
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+	/**
+	 * True if a refresh has been scheduled and has not started yet.
+	 */
+	private final AtomicBoolean scheduled = new AtomicBoolean(false);
+	/**
+	 * The rendered contents that have not been shown yet.
+	 */
+	private final AtomicReference<String> rendered = new AtomicReference<String>();
+	/**
+	 * {@link System#nanoTime()} at the start of the last rendering.
+	 */
+	private volatile long lastRender;
+	private final Runnable renderTask = new Runnable() {
+		@Override
+		public void run() {
+			renderContents();
+		}
+	};
+	private final Runnable showTask = new Runnable() {
+		@Override
+		public void run() {
+			show(PanelRefresher.this.rendered.getAndSet(null));
+		}
+	};
+
+	/**
+	 * Marks the panel as out of date. May be called from any thread, and
+	 * returns right away.
+	 */
+	void refresh() {
+		if (this.scheduled.compareAndSet(false, true)) {
+			long interval = IntrospectorPreferences.getRefreshInterval();
+			long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime()
+					- this.lastRender);
+			long delay = Math.max(0, Math.min(interval, interval - elapsed));
+			executor.schedule(this.renderTask, delay, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Renders the contents on the background thread, and passes them on to
+	 * the Swing thread.
+	 */
+	private void renderContents() {
+		// reset before rendering, so that changes from now on schedule
+		// another refresh.
+		this.scheduled.set(false);
+		this.lastRender = System.nanoTime();
+		String text;
+		try {
+			text = render();
+		} catch (Exception e) {
+			new Warning(Resources.get(WarningStrings.FAILED_AWT_REFRESH_PANEL),
+					e);
+			return;
+		}
+		if (text != null && this.rendered.getAndSet(text) == null) {
+			SwingUtilities.invokeLater(this.showTask);
+		}
+	}
+
+	/**
+	 * Renders the contents of the panel. Called on the background thread.
+	 *
+	 * @return the contents, or null if there is nothing to show.
+	 */
+	protected abstract String render();
+
+	/**
+	 * Shows rendered contents in the panel. Called on the Swing thread.
+	 *
+	 * @param text
+	 *            the latest contents returned by {@link #render()}.
+	 */
+	protected abstract void show(String text);
+}
@@ -128,11 +128,21 @@ IDENode, DebugObserver {
 			this.processState = event.getRunMode();
 			// See #1229. When node changes, parent mode can also change.
 			// See also #1791
-			SwingUtilities.invokeLater(new MyAwtRerenderTrigger(this));
+			runModeChanged();
 			panelHasChanged();
 		}
 	}
 
+	/**
+	 * Called whenever the run mode of this node has changed, possibly from
+	 * another thread than the Swing thread. By default the node is re-rendered
+	 * later on the Swing thread. You can override this to collect the changes
+	 * of many nodes and re-render them together.
+	 */
+	protected void runModeChanged() {
+		SwingUtilities.invokeLater(new MyAwtRerenderTrigger(this));
+	}
+
 	/**
 	 * This runnable forces re-render of a node in the panel. see also #1791
 	 *
@@ -177,7 +187,7 @@ IDENode, DebugObserver {
 	 */
 	public void setKilled() {
 		this.processState = RunMode.KILLED;
-		this.model.nodeChanged(this);
+		runModeChanged();
 		panelHasChanged();
 	}
 
@@ -36,7 +36,18 @@ import java.awt.BorderLayout;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.swing.JLabel;
 import javax.swing.JPanel;
@@ -48,6 +59,7 @@ import javax.swing.event.TreeExpansionListener;
 import javax.swing.event.TreeSelectionEvent;
 import javax.swing.event.TreeSelectionListener;
 import javax.swing.tree.DefaultTreeModel;
+import javax.swing.tree.TreeNode;
 import javax.swing.tree.TreePath;
 
 import languageTools.program.agent.AgentId;
@@ -80,6 +92,27 @@ public class ProcessPanel extends JPanel implements RuntimeEventObserver {
 	 * Node that represents the multi-agent system, root of the tree.
 	 */
 	private ProcessNode masNode = null;
+	/**
+	 * The nodes in the tree by name, see {@link #findNode(String)}.
+	 */
+	private final Map<String, ProcessNode> nodesByName = new HashMap<String, ProcessNode>();
+	/**
+	 * Runtime events that have not been handled yet. Filled by any thread,
+	 * emptied by the Swing thread.
+	 */
+	private final Queue<RuntimeEvent> pendingEvents = new ConcurrentLinkedQueue<RuntimeEvent>();
+	/**
+	 * Nodes that have to be re-rendered, see {@link #nodeChanged(ProcessNode)}.
+	 * A node that changes several times before the Swing thread gets to it is
+	 * in here only once; it shows its latest run mode when rendered.
+	 */
+	private final Set<ProcessNode> changedNodes = Collections
+			.newSetFromMap(new ConcurrentHashMap<ProcessNode, Boolean>());
+	/**
+	 * True if {@link #handlePendingEvents()} has been scheduled and has not
+	 * started yet.
+	 */
+	private final AtomicBoolean eventsScheduled = new AtomicBoolean(false);
 
 	/**
 	 * Creates process panel that shows process tree representing a running MAS.
@@ -105,7 +138,10 @@ public class ProcessPanel extends JPanel implements RuntimeEventObserver {
 		removeAll();
 
 		// Create a new tree model.
-		this.processTreeModel = new DefaultTreeModel(null);
+		synchronized (this) {
+			this.processTreeModel = new DefaultTreeModel(null);
+			this.nodesByName.clear();
+		}
 		this.processTree = new JTree(this.processTreeModel);
 
 		// add listeners
@@ -139,65 +175,183 @@ public class ProcessPanel extends JPanel implements RuntimeEventObserver {
 	}
 
 	/**
-	 * Handles events from RuntimeManager.
+	 * Handles events from RuntimeManager. The events are handled in order on
+	 * the Swing thread. All events that arrive before the Swing thread gets to
+	 * them are handled in one go, so that many agents that are born at once
+	 * are added to the tree with one update.
 	 *
 	 * @param observable
 	 *            The {@link MonitoringService}.
 	 * @param argument
 	 *            A {@link RuntimeEvent} event.
-	 *
-	 *            FIXME: for which events is this still used? Appears that, for
-	 *            example, AGENT_DIED is never handled here...
 	 */
-	@SuppressWarnings("unchecked")
 	@Override
 	public void eventOccured(final RuntimeManager<?, ?> observable,
 			final RuntimeEvent event) {
 		// Invoke later because this is an event listener that may be called
 		// from another thread then the swing thread.
-		SwingUtilities.invokeLater(new Runnable() {
-			@Override
-			public void run() {
-				Object source = event.getSource();
+		this.pendingEvents.add(event);
+		scheduleUpdate();
+	}
+
+	/**
+	 * Marks a node to be re-rendered. May be called from any thread. All nodes
+	 * that changed are re-rendered together on the Swing thread, after the
+	 * pending runtime events have been handled.
+	 *
+	 * @param node
+	 *            the node that changed.
+	 */
+	void nodeChanged(ProcessNode node) {
+		if (this.changedNodes.add(node)) {
+			scheduleUpdate();
+		}
+	}
+
+	/**
+	 * Schedules {@link #handlePendingEvents()} on the Swing thread, unless it
+	 * already has been scheduled and has not started yet.
+	 */
+	private void scheduleUpdate() {
+		if (this.eventsScheduled.compareAndSet(false, true)) {
+			SwingUtilities.invokeLater(new Runnable() {
+				@Override
+				public void run() {
+					handlePendingEvents();
+				}
+			});
+		}
+	}
+
+	/**
+	 * Handles all events in {@link #pendingEvents}, and then re-renders all
+	 * {@link #changedNodes}. Agents that are born one after another are added
+	 * together. An event that can not be handled is reported, and does not
+	 * keep the other events from being handled.
+	 */
+	private void handlePendingEvents() {
+		// reset before taking the events, so that events that arrive from now
+		// on schedule another call.
+		this.eventsScheduled.set(false);
+		List<Object> bornAgents = new ArrayList<Object>();
+		RuntimeEvent event;
+		try {
+			while ((event = this.pendingEvents.poll()) != null) {
 				switch (event.getType()) {
-				case MAS_BORN:
-					handleMasBorn(source);
-					break;
-				case MAS_DIED: // clean up tree and tree model
-					removeAll();
-					ProcessPanel.this.processTreeModel = new DefaultTreeModel(
-							null);
-					ProcessPanel.this.processTree
-					.setModel(ProcessPanel.this.processTreeModel);
-					break;
 				case AGENT_BORN:
 				case AGENT_IS_LOCAL_AND_READY:
-					handleAgentBorn(source);
-					break;
-				case AGENT_DIED:
-					handleAgentDied((String) source);
-					break;
-				case AGENT_REMOVED:
-					handleAgentRemoved((String) source);
-					break;
-				case SCHEDULER_SELECTED_AGENT:
-					// highlight selected agents in process panel
-					newSelectedAgent((ArrayList<Agent<IDEGOALInterpreter>>) source);
-					break;
-				case ENVIRONMENT_LAUNCHED:
-					handleEnvBorn(source);
-					break;
-				case ENVIRONMENT_RUNMODE_CHANGED:
-					handleEnvStateChanged(source);
-					break;
-				case ENVIRONMENT_KILLED:
-					handleEnvKilled(source);
+					bornAgents.add(event.getSource());
 					break;
 				default:
+					handleAgentsBorn(bornAgents);
+					try {
+						handleRuntimeEvent(event);
+					} catch (RuntimeException e) {
+						reportFailure(e);
+					}
 					break;
 				}
 			}
-		});
+		} finally {
+			handleAgentsBorn(bornAgents);
+			handleChangedNodes();
+		}
+	}
+
+	/**
+	 * Reports that an event could not be handled.
+	 */
+	private static void reportFailure(RuntimeException e) {
+		new Warning(Resources.get(WarningStrings.FAILED_AWT_REFRESH_PANEL), e);
+	}
+
+	/**
+	 * Re-renders all nodes in {@link #changedNodes}. The model is notified once
+	 * per parent for all its changed children. The parent itself is re-rendered
+	 * too, as its run mode is derived from those of its children (#1229).
+	 * Nodes that are no longer in the tree are skipped.
+	 */
+	private synchronized void handleChangedNodes() {
+		if (this.changedNodes.isEmpty()) {
+			return;
+		}
+		Set<ProcessNode> nodes = Collections
+				.newSetFromMap(new IdentityHashMap<ProcessNode, Boolean>());
+		for (Iterator<ProcessNode> it = this.changedNodes.iterator(); it
+				.hasNext();) {
+			nodes.add(it.next());
+			it.remove();
+		}
+		Object root = this.processTreeModel.getRoot();
+		Set<TreeNode> parents = Collections
+				.newSetFromMap(new IdentityHashMap<TreeNode, Boolean>());
+		for (ProcessNode node : nodes) {
+			TreeNode parent = node.getParent();
+			if (parent != null) {
+				parents.add(parent);
+			} else if (node == root) {
+				this.processTreeModel.nodeChanged(node);
+			}
+		}
+		for (TreeNode parent : parents) {
+			int[] indices = new int[parent.getChildCount()];
+			int n = 0;
+			for (int i = 0; i < parent.getChildCount(); i++) {
+				if (nodes.contains(parent.getChildAt(i))) {
+					indices[n++] = i;
+				}
+			}
+			if (n > 0) {
+				this.processTreeModel.nodesChanged(parent,
+						Arrays.copyOf(indices, n));
+				if (!nodes.contains(parent)) {
+					this.processTreeModel.nodeChanged(parent);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Handles a single event, other than an agent being born.
+	 *
+	 * FIXME: for which events is this still used? Appears that, for example,
+	 * AGENT_DIED is never handled here...
+	 *
+	 * @param event
+	 *            A {@link RuntimeEvent} event.
+	 */
+	@SuppressWarnings("unchecked")
+	private void handleRuntimeEvent(RuntimeEvent event) {
+		Object source = event.getSource();
+		switch (event.getType()) {
+		case MAS_BORN:
+			handleMasBorn(source);
+			break;
+		case MAS_DIED: // clean up tree and tree model
+			handleMasDied();
+			break;
+		case AGENT_DIED:
+			handleAgentDied((String) source);
+			break;
+		case AGENT_REMOVED:
+			handleAgentRemoved((String) source);
+			break;
+		case SCHEDULER_SELECTED_AGENT:
+			// highlight selected agents in process panel
+			newSelectedAgent((ArrayList<Agent<IDEGOALInterpreter>>) source);
+			break;
+		case ENVIRONMENT_LAUNCHED:
+			handleEnvBorn(source);
+			break;
+		case ENVIRONMENT_RUNMODE_CHANGED:
+			handleEnvStateChanged(source);
+			break;
+		case ENVIRONMENT_KILLED:
+			handleEnvKilled(source);
+			break;
+		default:
+			break;
+		}
 	}
 
 	/**
@@ -213,7 +367,7 @@ public class ProcessPanel extends JPanel implements RuntimeEventObserver {
 			return;
 		}
 		// can we restart? should we restart? remote vs local?
-		this.processTreeModel.removeNodeFromParent(node);
+		removeNode(node);
 	}
 
 	/**
@@ -222,7 +376,7 @@ public class ProcessPanel extends JPanel implements RuntimeEventObserver {
 	 * @param source
 	 */
 
-	private void handleEnvStateChanged(Object source) {
+	private synchronized void handleEnvStateChanged(Object source) {
 		ProcessNode treenode = findNode(source.toString());
 		if (treenode == null) {
 			/**
@@ -240,10 +394,12 @@ public class ProcessPanel extends JPanel implements RuntimeEventObserver {
 				}
 				// we thought it was another a remote env but it's
 				// THE env.
+				unindex(treenode);
 				treenode.setUserObject(port);
+				index(treenode);
 			}
 		}
-		this.processTreeModel.nodeChanged(treenode);
+		nodeChanged(treenode);
 		ActionFactory.broadcastStateChange(this.myIDEState);
 
 	}
@@ -253,7 +409,7 @@ public class ProcessPanel extends JPanel implements RuntimeEventObserver {
 	 *
 	 * @param agentname
 	 */
-	private void handleAgentDied(String agentname) {
+	private synchronized void handleAgentDied(String agentname) {
 		ProcessNode node = findNode(agentname);
 
 		// check if node is null which may be the case if MAS has been
@@ -261,11 +417,10 @@ public class ProcessPanel extends JPanel implements RuntimeEventObserver {
 		if (node != null) {
 			if (node.getType() == NodeType.REMOTE_AGENT_PROCESS) {
 				// remote agent. Just remove the node.
-				this.processTreeModel.removeNodeFromParent(node);
+				removeNode(node);
 			} else {
 				// local agent
 				node.setKilled();
-				this.processTreeModel.nodeChanged(node);
 			}
 		}
 	}
@@ -278,7 +433,7 @@ public class ProcessPanel extends JPanel implements RuntimeEventObserver {
 	private synchronized void handleAgentRemoved(String agentname) {
 		final ProcessNode node = findNode(agentname);
 		if (node != null) {
-			this.processTreeModel.removeNodeFromParent(node);
+			removeNode(node);
 		}
 	}
 
@@ -292,23 +447,23 @@ public class ProcessPanel extends JPanel implements RuntimeEventObserver {
 	 *            {@link RuntimeManager}
 	 */
 	private synchronized void handleEnvBorn(Object source) {
-		ProcessNode node = new ProcessNode(source, this.processTreeModel) {
-			/**
-			 *
-			 */
-			private static final long serialVersionUID = 1405245480774729309L;
-
-			@Override
-			public void panelHasChanged() {
-				ActionFactory
-				.broadcastStateChange(ProcessPanel.this.myIDEState);
-			}
-		};
+		ProcessNode node = new PanelProcessNode(source);
 		this.processTreeModel.insertNodeInto(node, this.masNode,
 				this.masNode.getChildCount());
+		index(node);
 		this.processTree.scrollPathToVisible(new TreePath(node.getPath()));
 	}
 
+	/**
+	 * Handles the end of the MAS, by emptying the tree.
+	 */
+	private synchronized void handleMasDied() {
+		removeAll();
+		this.processTreeModel = new DefaultTreeModel(null);
+		this.processTree.setModel(this.processTreeModel);
+		this.nodesByName.clear();
+	}
+
 	/**
 	 * handle a new MAS, by creating a new node representing it
 	 *
@@ -316,79 +471,140 @@ public class ProcessPanel extends JPanel implements RuntimeEventObserver {
 	 *            is the RuntimeServiceManager
 	 */
 	private synchronized void handleMasBorn(Object source) {
-		this.masNode = new ProcessNode(source, this.processTreeModel) {
-			/**
-			 *
-			 */
-			private static final long serialVersionUID = -3976206418465524654L;
-
-			@Override
-			public void panelHasChanged() {
-				ActionFactory
-				.broadcastStateChange(ProcessPanel.this.myIDEState);
-			}
-		};
+		this.masNode = new PanelProcessNode(source);
 		this.processTreeModel.setRoot(this.masNode);
+		this.nodesByName.clear();
+		index(this.masNode);
 	}
 
 	/**
-	 * New agent was born. Insert the new agent in the panel and update buttons.
-	 * Synchronized because IDE is not threadsafe. #2402
+	 * New agents were born. Insert the new agents in the panel and update
+	 * buttons. The tree is notified once for all agents. An agent that can not
+	 * be added is reported, and the others are still added. Synchronized
+	 * because IDE is not threadsafe. #2402
 	 *
-	 * @param source
-	 *            is name (string) of the agent.
+	 * @param sources
+	 *            are the names (string) or agents that were born. Emptied by
+	 *            this call.
 	 */
 	@SuppressWarnings("unchecked")
-	private synchronized void handleAgentBorn(Object source) {
-		String agentname;
-		if (source instanceof String) {
-			agentname = (String) source;
-		} else {
-			agentname = ((Agent<IDEGOALInterpreter>) source).getId().getName();
+	private synchronized void handleAgentsBorn(List<Object> sources) {
+		if (sources.isEmpty()) {
+			return;
 		}
-
-		// only take action if we don't have the node already.
-		if (findNode(agentname) == null) {
-			ProcessNode node = new ProcessNode(source, this.processTreeModel) {
-				/**
-				 *
-				 */
-				private static final long serialVersionUID = 6888454348133887002L;
-
-				@Override
-				public void panelHasChanged() {
-					ActionFactory
-					.broadcastStateChange(ProcessPanel.this.myIDEState);
-				}
-			};
-
-			// Determine where to insert the node; lexicographic ordering.
-			int j = 0;
-			if (this.masNode.getChildCount() > 0) {
-				for (int i = 0; i < this.masNode.getChildCount(); i++) {
-					j = i;
-					if (node.getNodeName().compareTo(
-							((ProcessNode) this.masNode.getChildAt(i))
-							.getNodeName()) <= 0) {
-						break;
-					}
+		Set<ProcessNode> added = Collections
+				.newSetFromMap(new IdentityHashMap<ProcessNode, Boolean>());
+		ProcessNode lastAdded = null;
+		for (Object source : sources) {
+			try {
+				String agentname;
+				if (source instanceof String) {
+					agentname = (String) source;
+				} else {
+					agentname = ((Agent<IDEGOALInterpreter>) source).getId()
+							.getName();
 				}
-				if (node.getNodeName().compareTo(
-						((ProcessNode) this.masNode.getChildAt(j))
-						.getNodeName()) > 0) {
-					j++;
+
+				// only take action if we don't have the node already.
+				if (findNode(agentname) != null) {
+					continue;
 				}
+				ProcessNode node = new PanelProcessNode(source);
+
+				// Insert node without notifying the model yet; lexicographic
+				// ordering.
+				this.masNode.insert(node, getInsertIndex(node.getNodeName()));
+				index(node);
+				added.add(node);
+				lastAdded = node;
+			} catch (RuntimeException e) {
+				reportFailure(e);
+			}
+		}
+		sources.clear();
+		if (lastAdded == null) {
+			return;
+		}
+
+		// Notify the model of all new nodes at once.
+		int[] indices = new int[added.size()];
+		int n = 0;
+		for (int i = 0; i < this.masNode.getChildCount(); i++) {
+			if (added.contains(this.masNode.getChildAt(i))) {
+				indices[n++] = i;
+			}
+		}
+		this.processTreeModel.nodesWereInserted(this.masNode, indices);
+		this.processTree
+		.scrollPathToVisible(new TreePath(lastAdded.getPath()));
+
+		// DOC
+		ActionFactory.broadcastStateChange(this.myIDEState);
+	}
+
+	/**
+	 * Determines where to insert a node below the MAS node, such that the
+	 * children stay in lexicographic order.
+	 *
+	 * @param name
+	 *            name of the new node.
+	 * @return index of the first child with a name that is not smaller than
+	 *         the given name, or the number of children if there is none.
+	 */
+	private int getInsertIndex(String name) {
+		int low = 0;
+		int high = this.masNode.getChildCount();
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (name.compareTo(((ProcessNode) this.masNode.getChildAt(mid))
+					.getNodeName()) <= 0) {
+				high = mid;
+			} else {
+				low = mid + 1;
 			}
+		}
+		return low;
+	}
 
-			// Insert node.
-			this.processTreeModel.insertNodeInto(node, this.masNode, j);
-			this.processTree.scrollPathToVisible(new TreePath(node.getPath()));
+	/**
+	 * Adds a node to {@link #nodesByName}. If there already is a node with the
+	 * same name, that node stays. Like all changes to {@link #nodesByName},
+	 * this is done holding the monitor of this panel.
+	 *
+	 * @param node
+	 *            the node that has been added to the tree.
+	 */
+	private void index(ProcessNode node) {
+		String name = node.getNodeName();
+		if (!this.nodesByName.containsKey(name)) {
+			this.nodesByName.put(name, node);
+		}
+	}
 
-			// DOC
-			ActionFactory.broadcastStateChange(this.myIDEState);
+	/**
+	 * Removes a node from {@link #nodesByName}.
+	 *
+	 * @param node
+	 *            the node that is to be removed from the tree, or renamed.
+	 */
+	private void unindex(ProcessNode node) {
+		String name = node.getNodeName();
+		if (this.nodesByName.get(name) == node) {
+			this.nodesByName.remove(name);
 		}
 	}
 
+	/**
+	 * Removes a node from the tree and from {@link #nodesByName}.
+	 *
+	 * @param node
+	 *            a child of the MAS node.
+	 */
+	private void removeNode(ProcessNode node) {
+		this.processTreeModel.removeNodeFromParent(node);
+		unindex(node);
+	}
+
 	/**
 	 * A new agent has been selected by scheduler. This means we have to update
 	 * the panel, because non-selected agents in STEPPING mode are shown as
@@ -437,7 +653,7 @@ public class ProcessPanel extends JPanel implements RuntimeEventObserver {
 				// only render node if not in running mode to avoid
 				// 'flickering'
 				if (node.getRunMode() != RunMode.RUNNING) {
-					this.processTreeModel.nodeChanged(node);
+					nodeChanged(node);
 				}
 			}
 		}
@@ -468,18 +684,14 @@ public class ProcessPanel extends JPanel implements RuntimeEventObserver {
 
 	/**
 	 * Returns the node with the given name, i.e. the name of the associated
-	 * user object. Performs a walk-through of the tree.
+	 * user object. Looks the name up in an index of the tree.
 	 *
 	 * @param name
 	 *            name to be searched for.
 	 * @return node in process panel with given name, or null if node not found.
 	 */
 	public synchronized ProcessNode findNode(String name) {
-		if (this.processTreeModel.getRoot() == null) { // empty tree
-			return null;
-		}
-		// start at root node
-		return findNode(name, (ProcessNode) this.processTreeModel.getRoot());
+		return this.nodesByName.get(name);
 	}
 
 	/**
@@ -666,6 +878,32 @@ public class ProcessPanel extends JPanel implements RuntimeEventObserver {
 		return "ProcessPanel[" + this.myIDE + "]"; //$NON-NLS-1$ //$NON-NLS-2$
 	}
 
+	/**
+	 * Process node in this panel. Updates the actions when the node changes,
+	 * and leaves re-rendering to {@link ProcessPanel#nodeChanged(ProcessNode)}
+	 * so that changes of many nodes are shown in one go.
+	 */
+	private class PanelProcessNode extends ProcessNode {
+		/**
+		 *
+		 */
+		private static final long serialVersionUID = 6888454348133887002L;
+
+		PanelProcessNode(Object source) {
+			super(source, ProcessPanel.this.processTreeModel);
+		}
+
+		@Override
+		public void panelHasChanged() {
+			ActionFactory.broadcastStateChange(ProcessPanel.this.myIDEState);
+		}
+
+		@Override
+		protected void runModeChanged() {
+			nodeChanged(this);
+		}
+	}
+
 	/**
 	 * Handles double click events on process nodes, in order to open
 	 * introspector panels for the agent(s) that are selected. Single click
@@ -19,7 +19,11 @@
 package nl.tudelft.goal.SimpleIDE;
 
 import goal.core.agent.Agent;
+import goal.tools.IDEDebugger;
 import goal.tools.IDEGOALInterpreter;
+import goal.tools.debugger.Channel;
+import goal.tools.debugger.DebugEvent;
+import goal.tools.debugger.DebugObserver;
 import goal.tools.eclipse.QueryTool;
 import goal.tools.errorhandling.exceptions.GOALUserError;
 import goal.util.DefaultObservable;
@@ -33,14 +37,34 @@ import java.awt.event.ActionListener;
 import java.awt.event.FocusEvent;
 import java.awt.event.FocusListener;
 import java.awt.event.KeyEvent;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.swing.JButton;
 import javax.swing.JPanel;
+import javax.swing.JProgressBar;
 import javax.swing.JScrollPane;
 import javax.swing.JTextArea;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+import nl.tudelft.goal.SimpleIDE.preferences.IntrospectorPreferences;
 
 /**
  * Panel offering query possibilities inside an {@link IntrospectorPanel}.
+ * <p>
+ * Queries and actions are evaluated on a background thread, so that an
+ * expensive query does not lock up the IDE. While one runs, a progress bar is
+ * shown and it can be cancelled; it is also cancelled when it takes longer
+ * than {@link IntrospectorPreferences#getQueryTimeout()}. A cancelled query or
+ * action still runs to its end in the background, and no new one can be
+ * started before it has. The results of recent queries are remembered until
+ * the mental state of the agent changes.
  *
  * @author W.Pasman 4aug09: now using TextTrackingScrollPane to add clear
  *         button.
@@ -48,6 +72,7 @@ import javax.swing.JTextArea;
 public class QueryPanel extends JPanel
 implements
 FocusListener,
+DebugObserver,
 Observable<Observer<QueryPanel, DatabaseChangedInfo>, QueryPanel, DatabaseChangedInfo> {
 	/**
 	 *
@@ -60,8 +85,30 @@ Observable<Observer<QueryPanel, DatabaseChangedInfo>, QueryPanel, DatabaseChange
 	private static final int QUERY_TEXT_WIDTH = 40;
 	private static final int QUERY_TEXT_HEIGHT = 2;
 
+	/**
+	 * Number of query results remembered per agent.
+	 */
+	private static final int CACHE_SIZE = 32;
+
+	/**
+	 * Evaluates the queries and actions of all introspectors. A query that
+	 * does not stop when it is cancelled keeps its thread, but does not hold
+	 * up other queries.
+	 */
+	private static final ExecutorService queryExecutor = Executors
+			.newCachedThreadPool(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "Introspector query"); //$NON-NLS-1$
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
 	private final JButton querybutton = new JButton("Query");
 	private final JButton actionbutton = new JButton("Action");
+	private final JButton cancelbutton = new JButton("Cancel");
+	private final JProgressBar progress = new JProgressBar();
 	private final JTextArea querytext = new JTextArea(QUERY_TEXT_HEIGHT,
 			QUERY_TEXT_WIDTH);
 	private final JScrollPane querytextscrollpane = new JScrollPane(
@@ -73,6 +120,34 @@ Observable<Observer<QueryPanel, DatabaseChangedInfo>, QueryPanel, DatabaseChange
 	// input area
 
 	private final Agent<IDEGOALInterpreter> agent;
+	private final IDEDebugger debugger;
+
+	/**
+	 * The query or action that is running, or null. A cancelled one stays
+	 * here until its thread has returned. Only used on the Swing thread.
+	 */
+	private QueryTask running = null;
+	/**
+	 * Cancels the running query or action when it takes too long.
+	 */
+	private final Timer timeoutTimer;
+	/**
+	 * Incremented whenever the mental state of the agent changes. Results of
+	 * queries are only used again while it is unchanged.
+	 */
+	private final AtomicInteger mentalStateVersion = new AtomicInteger();
+	/**
+	 * Recent query results by query, least recently used first.
+	 */
+	private final Map<String, CachedResult> cache = new LinkedHashMap<String, CachedResult>(
+			16, 0.75f, true) {
+		private static final long serialVersionUID = -3471806457385203157L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, CachedResult> eldest) {
+			return size() > CACHE_SIZE;
+		}
+	};
 
 	private final DefaultObservable<Observer<QueryPanel, DatabaseChangedInfo>, QueryPanel, DatabaseChangedInfo> myObservable = new DefaultObservable<Observer<QueryPanel, DatabaseChangedInfo>, QueryPanel, DatabaseChangedInfo>();
 
@@ -88,6 +163,7 @@ Observable<Observer<QueryPanel, DatabaseChangedInfo>, QueryPanel, DatabaseChange
 	 */
 	public QueryPanel(Agent<IDEGOALInterpreter> agent) {
 		this.agent = agent;
+		this.debugger = agent.getController().getDebugger();
 		setLayout(new BorderLayout());
 
 		this.querytext.setText(INITIAL_TEXT);
@@ -98,20 +174,19 @@ Observable<Observer<QueryPanel, DatabaseChangedInfo>, QueryPanel, DatabaseChange
 					// check if query already complete.
 					// if so, do the query and consume the enter.
 					evt.consume();
-					try {
+					if (QueryPanel.this.running == null) {
 						QueryPanel.this.doquery();
-					} catch (GOALUserError e) {
-						// TODO Auto-generated catch block
-						e.printStackTrace();
-					} // TODO if query is expensive or
-					// even crashes,
-					// this locks up the IDE
+					}
 				}
 			}
 		});
 
 		this.querytext.addFocusListener(this);
 
+		this.progress.setIndeterminate(true);
+		this.progress.setVisible(false);
+		this.cancelbutton.setEnabled(false);
+
 		/*
 		 * we want the query text to auto-size, therefore we place that in the
 		 * center. the rest must be in WEST.
@@ -119,6 +194,8 @@ Observable<Observer<QueryPanel, DatabaseChangedInfo>, QueryPanel, DatabaseChange
 		JPanel buttons = new JPanel(new FlowLayout());
 		buttons.add(this.actionbutton);
 		buttons.add(this.querybutton);
+		buttons.add(this.cancelbutton);
+		buttons.add(this.progress);
 		this.querytop.setLayout(new BorderLayout());
 		this.querytop.add(buttons, BorderLayout.WEST);
 		this.querytop.add(this.querytextscrollpane, BorderLayout.CENTER);
@@ -129,59 +206,190 @@ Observable<Observer<QueryPanel, DatabaseChangedInfo>, QueryPanel, DatabaseChange
 		this.querybutton.addActionListener(new ActionListener() {
 			@Override
 			public void actionPerformed(ActionEvent e) {
-				try {
-					QueryPanel.this.doquery();
-				} catch (GOALUserError e1) {
-					// TODO Auto-generated catch block
-					e1.printStackTrace();
-				}
+				QueryPanel.this.doquery();
 			}
 		});
 
 		this.actionbutton.addActionListener(new ActionListener() {
 			@Override
 			public void actionPerformed(ActionEvent e) {
-				try {
-					QueryPanel.this.doaction();
-				} catch (GOALUserError e1) {
-					// TODO Auto-generated catch block
-					e1.printStackTrace();
-				}
+				QueryPanel.this.doaction();
+			}
+		});
+
+		this.cancelbutton.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				cancel("cancelled.");
 			}
 		});
 
+		this.timeoutTimer = new Timer(0, new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				cancel("timed out.");
+			}
+		});
+		this.timeoutTimer.setRepeats(false);
 	}
 
 	/**
-	 * Performs query when the query button in the panel is pressed.
-	 *
-	 * @throws GOALUserError
+	 * Performs query when the query button in the panel is pressed. A result
+	 * that is remembered from an earlier query is shown right away.
+	 */
+	private void doquery() {
+		String query = this.querytext.getText();
+		String result = getCachedResult(query);
+		if (result != null) {
+			this.queryresult.setText(result);
+		} else {
+			start(new QueryTask(query, false));
+		}
+	}
+
+	/**
+	 * Performs action when the action button in the panel is pressed.
+	 */
+	public void doaction() {
+		start(new QueryTask(this.querytext.getText(), true));
+	}
+
+	/**
+	 * Starts a query or action on the background thread.
 	 */
-	private void doquery() throws GOALUserError {
+	private void start(QueryTask task) {
 		this.queryresult.setText("");
-		try {
-			QueryTool query = new QueryTool(this.agent);
-			String resulttext = query.doquery(this.querytext.getText());
-			this.queryresult.setText(resulttext);
-		} catch (GOALUserError e) {
-			this.queryresult.setText("Query failed: " + e.getMessage());
-			throw e;
+		this.running = task;
+		task.future = queryExecutor.submit(task);
+		setRunning(true);
+	}
+
+	/**
+	 * Cancels the running query or action, if any. The agent can not stop a
+	 * query or action halfway, so no new one can be started until the
+	 * cancelled one has returned.
+	 *
+	 * @param reason
+	 *            shown after the kind of task that is cancelled.
+	 */
+	private void cancel(String reason) {
+		QueryTask task = this.running;
+		if (task == null || task.cancelled) {
+			return;
+		}
+		task.cancelled = true;
+		this.cancelbutton.setEnabled(false);
+		this.timeoutTimer.stop();
+		this.queryresult.setText((task.action ? "Action " : "Query ") + reason);
+		if (task.future.cancel(false)) {
+			// it never started, so it will not report that it finished.
+			finished(task, null, false);
+		} else {
+			task.interrupt();
+		}
+	}
+
+	/**
+	 * Shows the result of a query or action, unless it has been cancelled,
+	 * and allows a new one to be started. Called on the Swing thread.
+	 */
+	private void finished(QueryTask task, String result, boolean succeeded) {
+		if (this.running != task) {
+			return;
+		}
+		this.running = null;
+		setRunning(false);
+		if (!task.cancelled) {
+			this.queryresult.setText(result);
+		}
+		if (task.action && (succeeded || task.cancelled)) {
+			// a cancelled action may still have changed the mental state.
+			notifyObservers(this, new DatabaseChangedInfo());
 		}
 	}
 
 	/**
-	 * Performs query when the query button in the panel is pressed.
+	 * Enables the buttons and shows the progress bar that fit whether a query
+	 * or action is running.
 	 */
-	public void doaction() throws GOALUserError {
-		try {
-			QueryTool action = new QueryTool(this.agent);
-			String message = action.doaction(this.querytext.getText());
-			this.queryresult.setText(message);
-		} catch (GOALUserError e) {
-			this.queryresult.setText("Action failed: " + e.getMessage());
-			throw e;
+	private void setRunning(boolean isRunning) {
+		this.querybutton.setEnabled(!isRunning);
+		this.actionbutton.setEnabled(!isRunning);
+		this.cancelbutton.setEnabled(isRunning);
+		this.progress.setVisible(isRunning);
+		if (isRunning) {
+			this.timeoutTimer.setInitialDelay(IntrospectorPreferences
+					.getQueryTimeout());
+			this.timeoutTimer.restart();
+		} else {
+			this.timeoutTimer.stop();
 		}
-		notifyObservers(this, new DatabaseChangedInfo());
+		this.querytop.revalidate();
+	}
+
+	/**
+	 * @return the remembered result of a query, or null if there is none for
+	 *         the current mental state.
+	 */
+	private String getCachedResult(String query) {
+		synchronized (this.cache) {
+			CachedResult cached = this.cache.get(query.trim());
+			if (cached == null) {
+				return null;
+			}
+			if (cached.version != this.mentalStateVersion.get()) {
+				this.cache.remove(query.trim());
+				return null;
+			}
+			return cached.result;
+		}
+	}
+
+	/**
+	 * Remembers the result of a query, if the mental state did not change
+	 * since the query was started.
+	 */
+	private void putCachedResult(String query, int version, String result) {
+		synchronized (this.cache) {
+			if (version == this.mentalStateVersion.get()) {
+				this.cache.put(query.trim(), new CachedResult(version, result));
+			}
+		}
+	}
+
+	@Override
+	public void addNotify() {
+		super.addNotify();
+		// changes while we were not subscribed were missed.
+		this.mentalStateVersion.incrementAndGet();
+		this.debugger.subscribe(this, Channel.BB_UPDATES);
+		this.debugger.subscribe(this, Channel.GB_UPDATES);
+		this.debugger.subscribe(this, Channel.GOAL_ACHIEVED);
+		this.debugger.subscribe(this, Channel.GB_CHANGES);
+		this.debugger.subscribe(this, Channel.MAILS);
+		this.debugger.subscribe(this, Channel.PERCEPTS_CONDITIONAL_VIEW);
+		this.debugger.subscribe(this, Channel.EMOTIONS_CONDITIONAL_VIEW);
+	}
+
+	@Override
+	public void removeNotify() {
+		this.debugger.unsubscribe(this);
+		cancel("cancelled.");
+		super.removeNotify();
+	}
+
+	@Override
+	public String getObserverName() {
+		return "Query_Window"; //$NON-NLS-1$
+	}
+
+	/**
+	 * Called when the mental state of the agent changes. Forgets all query
+	 * results.
+	 */
+	@Override
+	public void notifyBreakpointHit(DebugEvent event) {
+		this.mentalStateVersion.incrementAndGet();
 	}
 
 	@Override
@@ -224,4 +432,97 @@ Observable<Observer<QueryPanel, DatabaseChangedInfo>, QueryPanel, DatabaseChange
 	public void notifyObservers(QueryPanel src, DatabaseChangedInfo obj) {
 		this.myObservable.notifyObservers(this, obj);
 	}
+
+	/**
+	 * A query or action that is evaluated on the background thread.
+	 */
+	private final class QueryTask implements Runnable {
+		private final String text;
+		private final boolean action;
+		/**
+		 * The mental state version when the query was started.
+		 */
+		private final int version = QueryPanel.this.mentalStateVersion.get();
+		private Future<?> future;
+		/**
+		 * True once the task has been cancelled. Only used on the Swing
+		 * thread.
+		 */
+		private boolean cancelled = false;
+		/**
+		 * The thread that evaluates the task, while it does.
+		 */
+		private Thread thread = null;
+
+		QueryTask(String text, boolean action) {
+			this.text = text;
+			this.action = action;
+		}
+
+		/**
+		 * Interrupts the thread that evaluates the task, if it still does.
+		 */
+		synchronized void interrupt() {
+			if (this.thread != null) {
+				this.thread.interrupt();
+			}
+		}
+
+		@Override
+		public void run() {
+			synchronized (this) {
+				this.thread = Thread.currentThread();
+			}
+			String result;
+			boolean succeeded = false;
+			try {
+				QueryTool tool = new QueryTool(QueryPanel.this.agent);
+				if (this.action) {
+					result = tool.doaction(this.text);
+				} else {
+					result = tool.doquery(this.text);
+					putCachedResult(this.text, this.version, result);
+				}
+				succeeded = true;
+			} catch (GOALUserError e) {
+				result = (this.action ? "Action" : "Query") + " failed: "
+						+ e.getMessage();
+			} catch (Throwable e) {
+				// also errors, such as a StackOverflowError from a deeply
+				// recursive query: the panel must always be told that the
+				// task is finished, or it can not start another one.
+				result = (this.action ? "Action" : "Query") + " failed: " + e;
+			} finally {
+				if (this.action) {
+					// also when it failed, it may have changed the mental
+					// state partly.
+					QueryPanel.this.mentalStateVersion.incrementAndGet();
+				}
+				synchronized (this) {
+					this.thread = null;
+				}
+			}
+			final String shown = result;
+			final boolean done = succeeded;
+			SwingUtilities.invokeLater(new Runnable() {
+				@Override
+				public void run() {
+					finished(QueryTask.this, shown, done);
+				}
+			});
+		}
+	}
+
+	/**
+	 * A query result, and the mental state version it is valid for.
+	 */
+	private static final class CachedResult {
+		private final int version;
+		private final String result;
+
+		CachedResult(int version, String result) {
+			this.version = version;
+			this.result = result;
+		}
+	}
 }
@@ -0,0 +1,678 @@
+/**
+ * GOAL interpreter that facilitates developing and executing GOAL multi-agent
+ * programs. Copyright (C) 2011 K.V. Hindriks, W. Pasman
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nl.tudelft.goal.SimpleIDE;
+
+import java.util.Arrays;
+import java.util.Hashtable;
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.event.EventListenerList;
+import javax.swing.event.UndoableEditListener;
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+import javax.swing.text.PlainDocument;
+import javax.swing.text.Position;
+import javax.swing.text.Segment;
+import javax.swing.text.SimpleAttributeSet;
+
+/**
+ * A plain text {@link Document} for log output, that holds at most a fixed
+ * number of lines and characters. Text can only be appended at the end and
+ * removed from the start. When appended text does not fit, the oldest lines
+ * are removed first.
+ * <p>
+ * The text is kept in a ring of characters and the line starts in a ring of
+ * offsets, so appending and removing lines does not move any text and, apart
+ * from the document events, does not allocate. A {@link PlainDocument} instead
+ * moves all remaining text and creates an element for each line.
+ * <p>
+ * Like the Swing text components it is used by, this document should only be
+ * used from the event dispatch thread. It does not support undo.
+ *
+ * @see TextTrackingScrollPane#TextTrackingScrollPane(String, int, boolean)
+ */
+public class RingBufferDocument implements Document {
+	/**
+	 * The text. One more than the character capacity, so that the implied
+	 * newline at the end of the document always fits behind the text.
+	 */
+	private char[] chars;
+	/**
+	 * Absolute start offset of each line, indexed by slot.
+	 */
+	private long[] lineStarts;
+	/**
+	 * The element of each slot, created when the slot is first used.
+	 */
+	private LineElement[] lines;
+	/**
+	 * Absolute offset of the first and after the last character. Absolute
+	 * offsets only grow; the offset in the document is absolute - head.
+	 */
+	private long head, tail;
+	/**
+	 * Slot of the first line, and the number of lines. There always is at
+	 * least one line.
+	 */
+	private int firstSlot, lineCount;
+
+	private final Element root = new RootElement();
+	/**
+	 * Stands in for removed lines in document events, see
+	 * {@link #removeHead(int)}.
+	 */
+	private final Element removedLine = new LineElement(-1);
+	private final EventListenerList listeners = new EventListenerList();
+	private final Hashtable<Object, Object> properties = new Hashtable<Object, Object>();
+
+	/**
+	 * Creates an empty document.
+	 *
+	 * @param maxLines
+	 *            maximum number of lines in the document, counting the
+	 *            (possibly empty) line after the last newline. At least 1.
+	 * @param maxChars
+	 *            maximum number of characters in the document. At least 1.
+	 */
+	public RingBufferDocument(int maxLines, int maxChars) {
+		if (maxLines < 1 || maxChars < 1) {
+			throw new IllegalArgumentException(
+					"document must hold at least one line and one character"); //$NON-NLS-1$
+		}
+		this.properties.put(PlainDocument.tabSizeAttribute, 8);
+		allocate(maxLines, maxChars);
+	}
+
+	/**
+	 * @return maximum number of lines in this document.
+	 */
+	public int getLineCapacity() {
+		return this.lineStarts.length;
+	}
+
+	/**
+	 * @return maximum number of characters in this document.
+	 */
+	public int getCharCapacity() {
+		return this.chars.length - 1;
+	}
+
+	/**
+	 * Changes the capacity of this document. Keeps as much of the newest text
+	 * as fits. Not cheap, as all text is copied.
+	 *
+	 * @param maxLines
+	 *            see {@link #RingBufferDocument(int, int)}.
+	 * @param maxChars
+	 *            see {@link #RingBufferDocument(int, int)}.
+	 */
+	public void setCapacity(int maxLines, int maxChars) {
+		if (maxLines < 1 || maxChars < 1) {
+			throw new IllegalArgumentException(
+					"document must hold at least one line and one character"); //$NON-NLS-1$
+		}
+		String text = toString(0, getLength());
+		removeHead(getLength());
+		allocate(maxLines, maxChars);
+		append(text);
+	}
+
+	private void allocate(int maxLines, int maxChars) {
+		this.chars = new char[maxChars + 1];
+		this.lineStarts = new long[maxLines];
+		this.lines = new LineElement[maxLines];
+		this.firstSlot = 0;
+		this.lineCount = 1;
+		this.lineStarts[0] = this.tail;
+		this.head = this.tail;
+		this.chars[index(this.tail)] = '\n';
+	}
+
+	/* Document */
+
+	@Override
+	public int getLength() {
+		return (int) (this.tail - this.head);
+	}
+
+	@Override
+	public void addDocumentListener(DocumentListener listener) {
+		this.listeners.add(DocumentListener.class, listener);
+	}
+
+	@Override
+	public void removeDocumentListener(DocumentListener listener) {
+		this.listeners.remove(DocumentListener.class, listener);
+	}
+
+	@Override
+	public void addUndoableEditListener(UndoableEditListener listener) {
+		// no undo, but keep the listener as the interface requires.
+		this.listeners.add(UndoableEditListener.class, listener);
+	}
+
+	@Override
+	public void removeUndoableEditListener(UndoableEditListener listener) {
+		this.listeners.remove(UndoableEditListener.class, listener);
+	}
+
+	@Override
+	public Object getProperty(Object key) {
+		return this.properties.get(key);
+	}
+
+	@Override
+	public void putProperty(Object key, Object value) {
+		if (value == null) {
+			this.properties.remove(key);
+		} else {
+			this.properties.put(key, value);
+		}
+	}
+
+	/**
+	 * Removes text. Only text at the start of the document can be removed.
+	 */
+	@Override
+	public void remove(int offs, int len) throws BadLocationException {
+		if (len == 0) {
+			return;
+		}
+		if (offs != 0 || len < 0 || len > getLength()) {
+			throw new BadLocationException(
+					"can only remove text from the start", offs); //$NON-NLS-1$
+		}
+		removeHead(len);
+	}
+
+	/**
+	 * Inserts text. Only appending at the end of the document is supported.
+	 * The attributes are ignored.
+	 */
+	@Override
+	public void insertString(int offset, String str, AttributeSet a)
+			throws BadLocationException {
+		if (str == null || str.isEmpty()) {
+			// JTextArea#replaceRange inserts null after removing.
+			return;
+		}
+		if (offset != getLength()) {
+			throw new BadLocationException("can only append text", offset); //$NON-NLS-1$
+		}
+		append(str);
+	}
+
+	@Override
+	public String getText(int offset, int length) throws BadLocationException {
+		checkRange(offset, length);
+		return toString(offset, length);
+	}
+
+	/**
+	 * Gets text. If the text is not split by the end of the ring, the segment
+	 * refers to the ring itself and nothing is copied. Otherwise, only the
+	 * part before the end of the ring is returned if the segment allows a
+	 * partial return, and a copy is made if not.
+	 */
+	@Override
+	public void getText(int offset, int length, Segment txt)
+			throws BadLocationException {
+		checkRange(offset, length);
+		int start = index(this.head + offset);
+		int first = Math.min(length, this.chars.length - start);
+		if (first == length || txt.isPartialReturn()) {
+			txt.array = this.chars;
+			txt.offset = start;
+			txt.count = first;
+		} else {
+			char[] copy = new char[length];
+			System.arraycopy(this.chars, start, copy, 0, first);
+			System.arraycopy(this.chars, 0, copy, first, length - first);
+			txt.array = copy;
+			txt.offset = 0;
+			txt.count = length;
+		}
+	}
+
+	@Override
+	public Position getStartPosition() {
+		return new Position() {
+			@Override
+			public int getOffset() {
+				return 0;
+			}
+		};
+	}
+
+	@Override
+	public Position getEndPosition() {
+		return new Position() {
+			@Override
+			public int getOffset() {
+				return getLength() + 1;
+			}
+		};
+	}
+
+	/**
+	 * Creates a position. The position stays with its text until that text is
+	 * removed, after which it is at the start of the document.
+	 */
+	@Override
+	public Position createPosition(int offs) throws BadLocationException {
+		if (offs < 0 || offs > getLength() + 1) {
+			throw new BadLocationException("no such offset", offs); //$NON-NLS-1$
+		}
+		final long absolute = this.head + offs;
+		return new Position() {
+			@Override
+			public int getOffset() {
+				long offset = absolute - RingBufferDocument.this.head;
+				return offset < 0 ? 0 : (int) Math.min(offset,
+						getLength() + 1);
+			}
+		};
+	}
+
+	@Override
+	public Element[] getRootElements() {
+		return new Element[] { this.root };
+	}
+
+	@Override
+	public Element getDefaultRootElement() {
+		return this.root;
+	}
+
+	@Override
+	public void render(Runnable r) {
+		// only used from the event dispatch thread, so no locking needed.
+		r.run();
+	}
+
+	/* Private */
+
+	/**
+	 * Appends text, removing the oldest lines first if it does not fit.
+	 */
+	private void append(String str) {
+		int len = str.length();
+		if (len == 0) {
+			return;
+		}
+		// text that does not fit even in an empty document is cut off at the
+		// start.
+		int start = Math.max(0, len - getCharCapacity());
+		int newLines = 0;
+		for (int i = str.indexOf('\n', start); i >= 0; i = str.indexOf('\n',
+				i + 1)) {
+			newLines++;
+		}
+		while (newLines >= getLineCapacity()) {
+			start = str.indexOf('\n', start) + 1;
+			newLines--;
+		}
+		len -= start;
+
+		// make room. If the start of the new text was cut off, none of the
+		// old text may stay, or the rest would be joined to its last line.
+		long cut = Math.max(0, getLength() + len - getCharCapacity());
+		int dropLines = this.lineCount + newLines - getLineCapacity();
+		if (start > 0) {
+			cut = getLength();
+		} else if (dropLines > 0) {
+			cut = Math.max(cut, this.lineStarts[slot(dropLines)] - this.head);
+		}
+		if (cut > 0) {
+			removeHead((int) cut);
+		}
+
+		// copy the text.
+		int offset = getLength();
+		int to = index(this.tail);
+		int first = Math.min(len, this.chars.length - to);
+		str.getChars(start, start + first, this.chars, to);
+		str.getChars(start + first, start + len, this.chars, 0);
+		this.tail += len;
+		this.chars[index(this.tail)] = '\n';
+
+		// record the new lines.
+		int changed = this.lineCount - 1;
+		for (int i = str.indexOf('\n', start); i >= 0; i = str.indexOf('\n',
+				i + 1)) {
+			this.lineStarts[slot(this.lineCount)] = this.tail - len + i
+					- start + 1;
+			this.lineCount++;
+		}
+
+		// the element of the line that got more text stays, so it is not
+		// reported as replaced. Views would otherwise measure all lines again
+		// if that line was the longest.
+		AbstractDocument.ElementEdit change = null;
+		if (newLines > 0) {
+			Element[] added = new Element[newLines];
+			for (int i = 0; i < added.length; i++) {
+				added[i] = line(changed + 1 + i);
+			}
+			change = new AbstractDocument.ElementEdit(this.root, changed + 1,
+					new Element[0], added);
+		}
+		Event event = new Event(offset, len, DocumentEvent.EventType.INSERT,
+				change);
+		for (DocumentListener listener : this.listeners
+				.getListeners(DocumentListener.class)) {
+			listener.insertUpdate(event);
+		}
+	}
+
+	/**
+	 * Removes the given number of characters from the start.
+	 */
+	private void removeHead(int len) {
+		if (len == 0) {
+			return;
+		}
+		long newHead = this.head + len;
+		int dropped = 0;
+		while (dropped < this.lineCount - 1
+				&& this.lineStarts[slot(dropped + 1)] <= newHead) {
+			dropped++;
+		}
+
+		// as in append(), a line that only lost text is not reported. The
+		// elements of the removed lines are about to be reused, so a
+		// placeholder is reported instead. That also keeps PlainView from
+		// measuring all lines again each time the line it knows as the
+		// longest is removed, which with lines removed from the start would
+		// be on nearly every append.
+		AbstractDocument.ElementEdit change = null;
+		if (dropped > 0) {
+			Element[] removed = new Element[dropped];
+			Arrays.fill(removed, this.removedLine);
+			change = new AbstractDocument.ElementEdit(this.root, 0, removed,
+					new Element[0]);
+		}
+
+		this.firstSlot = slot(dropped);
+		this.lineCount -= dropped;
+		this.lineStarts[this.firstSlot] = Math.max(
+				this.lineStarts[this.firstSlot], newHead);
+		this.head = newHead;
+
+		Event event = new Event(0, len, DocumentEvent.EventType.REMOVE, change);
+		for (DocumentListener listener : this.listeners
+				.getListeners(DocumentListener.class)) {
+			listener.removeUpdate(event);
+		}
+	}
+
+	private void checkRange(int offset, int length)
+			throws BadLocationException {
+		// the implied newline at the end may be read as well.
+		if (offset < 0 || length < 0 || offset + length > getLength() + 1) {
+			throw new BadLocationException("no such text", offset); //$NON-NLS-1$
+		}
+	}
+
+	private String toString(int offset, int length) {
+		int start = index(this.head + offset);
+		int first = Math.min(length, this.chars.length - start);
+		StringBuilder text = new StringBuilder(length);
+		text.append(this.chars, start, first);
+		text.append(this.chars, 0, length - first);
+		return text.toString();
+	}
+
+	/**
+	 * @return index in {@link #chars} of an absolute offset.
+	 */
+	private int index(long absolute) {
+		return (int) (absolute % this.chars.length);
+	}
+
+	/**
+	 * @return slot of the line with the given index.
+	 */
+	private int slot(int line) {
+		return (this.firstSlot + line) % this.lineStarts.length;
+	}
+
+	/**
+	 * @return the element of the line with the given index.
+	 */
+	private Element line(int line) {
+		int slot = slot(line);
+		if (this.lines[slot] == null) {
+			this.lines[slot] = new LineElement(slot);
+		}
+		return this.lines[slot];
+	}
+
+	/**
+	 * @return start offset of the line with the given index.
+	 */
+	private int lineStart(int line) {
+		return (int) (this.lineStarts[slot(line)] - this.head);
+	}
+
+	/**
+	 * @return end offset of the line with the given index.
+	 */
+	private int lineEnd(int line) {
+		return line == this.lineCount - 1 ? getLength() + 1
+				: lineStart(line + 1);
+	}
+
+	/**
+	 * The element holding the lines.
+	 */
+	private class RootElement implements Element {
+		@Override
+		public Document getDocument() {
+			return RingBufferDocument.this;
+		}
+
+		@Override
+		public Element getParentElement() {
+			return null;
+		}
+
+		@Override
+		public String getName() {
+			return AbstractDocument.ParagraphElementName;
+		}
+
+		@Override
+		public AttributeSet getAttributes() {
+			return SimpleAttributeSet.EMPTY;
+		}
+
+		@Override
+		public int getStartOffset() {
+			return 0;
+		}
+
+		@Override
+		public int getEndOffset() {
+			return getLength() + 1;
+		}
+
+		@Override
+		public int getElementIndex(int offset) {
+			int low = 0;
+			int high = RingBufferDocument.this.lineCount - 1;
+			while (low < high) {
+				int mid = (low + high + 1) >>> 1;
+				if (lineStart(mid) <= offset) {
+					low = mid;
+				} else {
+					high = mid - 1;
+				}
+			}
+			return low;
+		}
+
+		@Override
+		public int getElementCount() {
+			return RingBufferDocument.this.lineCount;
+		}
+
+		@Override
+		public Element getElement(int index) {
+			if (index < 0 || index >= RingBufferDocument.this.lineCount) {
+				return null;
+			}
+			return line(index);
+		}
+
+		@Override
+		public boolean isLeaf() {
+			return false;
+		}
+	}
+
+	/**
+	 * The element of one line. Belongs to a slot rather than to a line, so
+	 * that it can be reused when the slot is.
+	 */
+	private class LineElement implements Element {
+		private final int slot;
+
+		/**
+		 * @param slot
+		 *            the slot, or -1 for {@link #removedLine}.
+		 */
+		LineElement(int slot) {
+			this.slot = slot;
+		}
+
+		/**
+		 * @return the index of the line in this slot, which is at least
+		 *         {@link #lineCount} if the slot is not in use.
+		 */
+		private int index() {
+			if (this.slot < 0) {
+				return Integer.MAX_VALUE;
+			}
+			int length = RingBufferDocument.this.lineStarts.length;
+			return (this.slot - RingBufferDocument.this.firstSlot + length)
+					% length;
+		}
+
+		@Override
+		public Document getDocument() {
+			return RingBufferDocument.this;
+		}
+
+		@Override
+		public Element getParentElement() {
+			return RingBufferDocument.this.root;
+		}
+
+		@Override
+		public String getName() {
+			return AbstractDocument.ContentElementName;
+		}
+
+		@Override
+		public AttributeSet getAttributes() {
+			return SimpleAttributeSet.EMPTY;
+		}
+
+		@Override
+		public int getStartOffset() {
+			int index = index();
+			return index < RingBufferDocument.this.lineCount ? lineStart(index)
+					: 0;
+		}
+
+		@Override
+		public int getEndOffset() {
+			int index = index();
+			return index < RingBufferDocument.this.lineCount ? lineEnd(index)
+					: 0;
+		}
+
+		@Override
+		public int getElementIndex(int offset) {
+			return -1;
+		}
+
+		@Override
+		public int getElementCount() {
+			return 0;
+		}
+
+		@Override
+		public Element getElement(int index) {
+			return null;
+		}
+
+		@Override
+		public boolean isLeaf() {
+			return true;
+		}
+	}
+
+	/**
+	 * Describes an insert or remove.
+	 */
+	private class Event implements DocumentEvent {
+		private final int offset;
+		private final int length;
+		private final EventType type;
+		private final ElementChange change;
+
+		Event(int offset, int length, EventType type, ElementChange change) {
+			this.offset = offset;
+			this.length = length;
+			this.type = type;
+			this.change = change;
+		}
+
+		@Override
+		public int getOffset() {
+			return this.offset;
+		}
+
+		@Override
+		public int getLength() {
+			return this.length;
+		}
+
+		@Override
+		public Document getDocument() {
+			return RingBufferDocument.this;
+		}
+
+		@Override
+		public EventType getType() {
+			return this.type;
+		}
+
+		@Override
+		public ElementChange getChange(Element elem) {
+			return elem == RingBufferDocument.this.root ? this.change : null;
+		}
+	}
+}
@@ -27,14 +27,17 @@ import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.charset.Charset;
 import java.util.Set;
 
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 
+import org.gjt.sp.jedit.buffer.JEditBuffer;
+import org.gjt.sp.jedit.bufferio.JEditBufferLoader;
 import org.gjt.sp.jedit.textarea.TextArea;
 
 /**
@@ -109,20 +112,18 @@ public abstract class TextEditorInterface extends JPanel {
 
 	// ******************* IO Handling ********************/
 	/**
-	 * DOC Reads file and returns content as a string. CHECK: we dropped all
-	 * save functionality from jEdit: autosave, special character support, etc.
-	 * The save routines in jEdit are extensive and intricately linked with
-	 * View, Buffer (which is NOT the JEditBuffer) etc. However all it takes to
-	 * do a basic load and save is a few lines of code as below.
+	 * Checks that the file exists. If it does not, the user is asked whether
+	 * it should be created, and it is created if so.
 	 *
-	 * @throws DOC
-	 *             exceptions handled by calling method to be able to clean up
-	 *             e.g. editor window
+	 * @param filename
+	 *            the file that is about to be read.
+	 * @throws FileNotFoundException
+	 *             if the file does not exist and the user does not want it
+	 *             created.
+	 * @throws IOException
+	 *             if the file could not be created.
 	 */
-	public static String readFile(String filename) throws IOException {
-		String filecontents = "";
-		String line;
-
+	public static void ensureFileExists(String filename) throws IOException {
 		File thefile = new File(filename);
 		// if the file does not exist, ask if it should be created.
 		if (!thefile.exists()) {
@@ -148,6 +149,28 @@ public abstract class TextEditorInterface extends JPanel {
 				throw new FileNotFoundException();
 			}
 		}
+	}
+
+	/**
+	 * DOC Reads file and returns content as a string. CHECK: we dropped all
+	 * save functionality from jEdit: autosave, special character support, etc.
+	 * The save routines in jEdit are extensive and intricately linked with
+	 * View, Buffer (which is NOT the JEditBuffer) etc. However all it takes to
+	 * do a basic load and save is a few lines of code as below.
+	 * <p>
+	 * Editors that load into a jEdit buffer should use
+	 * {@link org.gjt.sp.jedit.bufferio.JEditBufferLoader} instead, which does
+	 * not build an intermediate String.
+	 *
+	 * @throws DOC
+	 *             exceptions handled by calling method to be able to clean up
+	 *             e.g. editor window
+	 */
+	public static String readFile(String filename) throws IOException {
+		ensureFileExists(filename);
+
+		StringBuilder filecontents = new StringBuilder();
+		String line;
 
 		// FileReader always assumes default encoding is OK!
 		BufferedReader input = new BufferedReader(new FileReader(filename));
@@ -158,11 +181,11 @@ public abstract class TextEditorInterface extends JPanel {
 		 * END of the stream.
 		 */
 		while ((line = input.readLine()) != null) {
-			filecontents = filecontents + line + "\n";
+			filecontents.append(line).append('\n');
 		}
 		input.close();
 
-		return filecontents;
+		return filecontents.toString();
 	}
 
 	/**
@@ -177,10 +200,34 @@ public abstract class TextEditorInterface extends JPanel {
 	 */
 	public static void writeFile(String filename, String contents)
 			throws IOException {
-		FileWriter fstream = new FileWriter(filename);
-		BufferedWriter out = new BufferedWriter(fstream);
-		out.write(contents);
-		out.close();
+		writeFile(filename, contents, Charset.defaultCharset().name());
+	}
+
+	/**
+	 * Writes a string to a file in the given encoding. A byte order mark is
+	 * written if the encoding includes one, such as UTF-8Y.
+	 *
+	 * @param filename
+	 *            is the name of the file to be written
+	 * @param contents
+	 *            is the string contents to be written
+	 * @param encoding
+	 *            is the name of the encoding, as in the
+	 *            {@link JEditBuffer#ENCODING} property of a buffer.
+	 * @throws IOException
+	 *             if error occurs.
+	 */
+	public static void writeFile(String filename, String contents,
+			String encoding) throws IOException {
+		FileOutputStream fstream = new FileOutputStream(filename);
+		try {
+			BufferedWriter out = new BufferedWriter(JEditBufferLoader
+					.getEncoding(encoding).getTextWriter(fstream));
+			out.write(contents);
+			out.close();
+		} finally {
+			fstream.close();
+		}
 	}
 
 	/**
@@ -329,6 +376,16 @@ public abstract class TextEditorInterface extends JPanel {
 	public abstract void removeBreakpoint(BreakPoint breakpoint)
 			throws ArrayIndexOutOfBoundsException;
 
+	/**
+	 * Replaces all breakpoints. Breakpoints that are already set are kept, so
+	 * that only the differences are applied.
+	 *
+	 * @param breakpoints
+	 *            the new breakpoints. Breakpoints on lines that do not exist
+	 *            are ignored.
+	 */
+	public abstract void setBreakpoints(Set<BreakPoint> breakpoints);
+
 	/**
 	 * comments out the selected text area. We prepend all lines in the selected
 	 * range with the lineComment property (see the mode files)
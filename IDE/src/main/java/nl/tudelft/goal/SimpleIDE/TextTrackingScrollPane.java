@@ -30,6 +30,9 @@ import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseWheelEvent;
 import java.awt.event.MouseWheelListener;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.swing.JComponent;
 import javax.swing.JMenuItem;
@@ -39,6 +42,7 @@ import javax.swing.JScrollPane;
 import javax.swing.JTabbedPane;
 import javax.swing.JTextArea;
 import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 import javax.swing.text.BadLocationException;
 
 import nl.tudelft.goal.SimpleIDE.preferences.IntrospectorPreferences;
@@ -60,6 +64,9 @@ import nl.tudelft.goal.SimpleIDE.preferences.IntrospectorPreferences;
  *           also halfway to see text scroll by at that place. You can now drop
  *           the scrollbar halfway and the scrollbar will clamp to that piece of
  *           text until it is at the top.
+ * @modified appended text is queued and moved into the text area at most once
+ *            every {@link #DRAIN_INTERVAL} ms, so that many threads appending
+ *            small pieces of text do not flood the Swing event queue.
  * @author W.Pasman 23sept10, actually recovered from the
  *         LogTextTrackingScrollPane that had been heavily extended in the code
  *         (instead of being extended via class extension)
@@ -71,6 +78,10 @@ ActionListener, MouseWheelListener, AdjustmentListener, MarkedReadable {
 	 */
 	private static final long serialVersionUID = -865628312651851555L;
 	private final JTextArea textarea;
+	/**
+	 * The document of {@link #textarea} if it is a ring buffer, or null.
+	 */
+	private final RingBufferDocument ringBuffer;
 	private final JScrollBar vscrollbar;
 	private final JPopupMenu popup;
 	private Integer wheelrotation = 0; // mouse wheel rotation. Updated via
@@ -81,6 +92,28 @@ ActionListener, MouseWheelListener, AdjustmentListener, MarkedReadable {
 
 	private boolean isUnread;
 
+	/**
+	 * Text passed to {@link #append(String)} that has not yet been moved into
+	 * the text area. Filled by any thread, emptied by the Swing thread. Guarded
+	 * by its own lock.
+	 */
+	private final StringBuilder pending = new StringBuilder();
+	/**
+	 * Number of appends in {@link #pending}.
+	 */
+	private final AtomicInteger queueDepth = new AtomicInteger();
+	/**
+	 * Number of lines that were appended but never shown, because more lines
+	 * than fit in the pane arrived between two drains.
+	 */
+	private final AtomicLong droppedLines = new AtomicLong();
+	/**
+	 * True if {@link #drainTimer} has been started and has not yet emptied
+	 * {@link #pending}.
+	 */
+	private final AtomicBoolean drainScheduled = new AtomicBoolean();
+	private final Timer drainTimer;
+
 	/**
 	 * minimum number of lines in the pane.
 	 */
@@ -91,6 +124,23 @@ ActionListener, MouseWheelListener, AdjustmentListener, MarkedReadable {
 	 */
 	private static final double END_SNAP_POSITION = 0.97;
 
+	/**
+	 * minimum time in ms between two moves of queued text into the text area.
+	 */
+	public static final int DRAIN_INTERVAL = 40;
+
+	/**
+	 * {@link #pending} is trimmed when it is emptied and can hold more
+	 * characters than this, so that a burst of text does not keep a large
+	 * buffer alive.
+	 */
+	private static final int MAX_IDLE_PENDING_CAPACITY = 1 << 16;
+
+	/**
+	 * number of characters a {@link RingBufferDocument} can hold per line.
+	 */
+	private static final int RING_BUFFER_CHARS_PER_LINE = 160;
+
 	/**
 	 * Sets up scrolling pane with text with a maximum number of lines of text
 	 * that are stored. Retrieves the maximum number of lines from the user
@@ -116,6 +166,27 @@ ActionListener, MouseWheelListener, AdjustmentListener, MarkedReadable {
 	 *            Should be set to {@link #MINIMUM_LINES} or more lines.
 	 */
 	public TextTrackingScrollPane(String initialText, int maxlines) {
+		this(initialText, maxlines, false);
+	}
+
+	/**
+	 * Sets up scrolling pane with text with a maximum number of lines of text
+	 * that are stored, optionally keeping the text in a
+	 * {@link RingBufferDocument}. That is much cheaper for panes that get a
+	 * lot of text, as old lines are then dropped without moving the rest of
+	 * the text. Lines that are very long on average may be dropped before the
+	 * maximum number of lines is reached.
+	 *
+	 * @param initialText
+	 *            initial text added to the text area when the panel is created.
+	 * @param maxlines
+	 *            maximum number of lines stored by the area, see
+	 *            {@link #TextTrackingScrollPane(String, int)}.
+	 * @param ringBuffer
+	 *            true to keep the text in a {@link RingBufferDocument}.
+	 */
+	public TextTrackingScrollPane(String initialText, int maxlines,
+			boolean ringBuffer) {
 		if (maxlines <= MINIMUM_LINES) {
 			throw new IllegalArgumentException(
 					"max number of lines must be at least " + MINIMUM_LINES); //$NON-NLS-1$
@@ -123,7 +194,14 @@ ActionListener, MouseWheelListener, AdjustmentListener, MarkedReadable {
 		this.isUnread = false;
 
 		this.maxNrOfLines = maxlines;
-		this.textarea = new JTextArea(initialText);
+		if (ringBuffer) {
+			this.ringBuffer = new RingBufferDocument(maxlines, maxlines
+					* RING_BUFFER_CHARS_PER_LINE);
+			this.textarea = new JTextArea(this.ringBuffer, initialText, 0, 0);
+		} else {
+			this.ringBuffer = null;
+			this.textarea = new JTextArea(initialText);
+		}
 		this.textarea.setEditable(false);
 		// textarea.getCaret().setVisible(true);
 		setViewportView(this.textarea);
@@ -163,6 +241,13 @@ ActionListener, MouseWheelListener, AdjustmentListener, MarkedReadable {
 
 		this.textarea.addMouseWheelListener(this);
 
+		this.drainTimer = new Timer(DRAIN_INTERVAL, new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				drain();
+			}
+		});
+		this.drainTimer.setRepeats(false);
 	}
 
 	/** handle scroll wheel events */
@@ -190,8 +275,17 @@ ActionListener, MouseWheelListener, AdjustmentListener, MarkedReadable {
 	 * @param max
 	 *            maximum number of lines to be stored by panel.
 	 */
-	public void setMaxLines(int max) {
+	public void setMaxLines(final int max) {
 		this.maxNrOfLines = max;
+		if (this.ringBuffer != null) {
+			SwingUtilities.invokeLater(new Runnable() {
+				@Override
+				public void run() {
+					TextTrackingScrollPane.this.ringBuffer.setCapacity(max, max
+							* RING_BUFFER_CHARS_PER_LINE);
+				}
+			});
+		}
 	}
 
 	/**
@@ -201,6 +295,23 @@ ActionListener, MouseWheelListener, AdjustmentListener, MarkedReadable {
 		return this.maxNrOfLines;
 	}
 
+	/**
+	 * @return the number of appends that are waiting to be moved into the
+	 *         text area.
+	 */
+	public int getQueueDepth() {
+		return this.queueDepth.get();
+	}
+
+	/**
+	 * @return the number of appended lines that were never shown, because
+	 *         more than {@link #getMaxLines()} lines were appended between two
+	 *         updates of the text area.
+	 */
+	public long getDroppedLineCount() {
+		return this.droppedLines.get();
+	}
+
 	@Override
 	public boolean isUnread() {
 		return this.isUnread;
@@ -248,7 +359,8 @@ ActionListener, MouseWheelListener, AdjustmentListener, MarkedReadable {
 	}
 
 	/**
-	 * Sets text in the text area. Thread safe.
+	 * Sets text in the text area. Thread safe. Text that was appended before
+	 * this call is replaced as well.
 	 *
 	 * @param text
 	 *            string to be displayed in text area.
@@ -257,51 +369,125 @@ ActionListener, MouseWheelListener, AdjustmentListener, MarkedReadable {
 		SwingUtilities.invokeLater(new Runnable() {
 			@Override
 			public void run() {
+				takePending();
 				TextTrackingScrollPane.this.textarea.setText(text);
 			}
 		});
 	}
 
 	/**
-	 * Appends text to text in text area in panel. Erases lines at beginning
-	 * whenever line count exceeds maximum number of lines allowed.
-	 *
-	 * @param text
-	 *            text to be appended to text area in panel.
-	 */
-
-	/**
-	 * Appends text to the text area. Thread safe - it uses
-	 * {@link SwingUtilities#invokeLater(Runnable)}. The scroll bar of the pane
-	 * is controlled as follows:
+	 * Appends text to the text area. Thread safe - the text is queued, and
+	 * all queued text is moved into the text area in one edit by the Swing
+	 * thread at most every {@link #DRAIN_INTERVAL} ms. Erases lines at
+	 * beginning whenever line count exceeds maximum number of lines allowed.
+	 * The scroll bar of the pane is controlled as follows:
 	 * <ul>
 	 * <li>The caret/scroll bar stays at the bottom, if it was already at
 	 * bottom.</li>
 	 * <li>The caret scrolls up with the text, if it is somewhere halfway</li>
 	 * <li>The caret keeps at the top, if it is at the top</li>
 	 * </ul>
-	 *
-	 * For efficiency, it's better to join strings first and then call append 1
-	 * time only instead of multiple times.
 	 */
 	protected void append(final String text) {
-		SwingUtilities.invokeLater(new Runnable() {
-			@Override
-			public void run() {
-				append1(text);
+		if (text == null || text.isEmpty()) {
+			return;
+		}
+		synchronized (this.pending) {
+			this.pending.append(text);
+			this.queueDepth.incrementAndGet();
+		}
+		scheduleDrain();
+	}
+
+	/**
+	 * Appends text like {@link #append(String)}, but lets the writer write it
+	 * straight into the text that is waiting to be moved into the text area,
+	 * so that no string has to be made for it. Thread safe.
+	 *
+	 * @param writer
+	 *            writes the text. It is called while other threads wait to
+	 *            append, so it should only write.
+	 */
+	protected void append(PendingTextWriter writer) {
+		synchronized (this.pending) {
+			int length = this.pending.length();
+			writer.writeTo(this.pending);
+			if (this.pending.length() == length) {
+				return;
 			}
-		});
+			this.queueDepth.incrementAndGet();
+		}
+		scheduleDrain();
+	}
+
+	/**
+	 * Starts {@link #drainTimer}, unless it already has been started and has
+	 * not drained yet.
+	 */
+	private void scheduleDrain() {
+		if (this.drainScheduled.compareAndSet(false, true)) {
+			this.drainTimer.start();
+		}
+	}
+
+	/**
+	 * Moves all queued text into the text area. Called by {@link #drainTimer}
+	 * on the Swing thread.
+	 */
+	private void drain() {
+		// reset before taking the text, so that text appended from now on
+		// schedules a new drain.
+		this.drainScheduled.set(false);
+		String text = takePending();
+		if (!text.isEmpty()) {
+			append1(text);
+		}
+	}
+
+	/**
+	 * Empties {@link #pending}.
+	 *
+	 * @return all text that was queued, joined.
+	 */
+	private String takePending() {
+		synchronized (this.pending) {
+			String text = this.pending.toString();
+			this.pending.setLength(0);
+			if (this.pending.capacity() > MAX_IDLE_PENDING_CAPACITY) {
+				this.pending.trimToSize();
+			}
+			this.queueDepth.set(0);
+			return text;
+		}
 	}
 
 	/**
 	 * Internal function doing the real append. Does Swing calls and therefore
-	 * should always be called through #app.
+	 * should always be called from the Swing thread.
 	 *
 	 * @param text
 	 */
 	private void append1(String text) {
-		// preferably, we'd not append everything if the text has too many
-		// lines, but the speedup is probably small (if at all noticeable).
+		// do not insert lines that would be removed again right away.
+		int start = text.length();
+		int lines = 0;
+		while (start > 0 && lines < this.maxNrOfLines) {
+			start = text.lastIndexOf('\n', start - 1);
+			if (start < 0) {
+				start = 0;
+			} else {
+				lines++;
+			}
+		}
+		if (start > 0) {
+			long dropped = 1;
+			for (int i = text.indexOf('\n'); i >= 0 && i < start; i = text
+					.indexOf('\n', i + 1)) {
+				dropped++;
+			}
+			this.droppedLines.addAndGet(dropped);
+			text = text.substring(start + 1);
+		}
 		this.textarea.append(text);
 
 		// check if there are too many lines visible
@@ -422,4 +608,16 @@ ActionListener, MouseWheelListener, AdjustmentListener, MarkedReadable {
 			setText(""); //$NON-NLS-1$
 		}
 	}
+
+	/**
+	 * Writes text for {@link TextTrackingScrollPane#append(PendingTextWriter)}.
+	 */
+	protected interface PendingTextWriter {
+		/**
+		 * @param pending
+		 *            the text waiting to be moved into the text area, to append
+		 *            to.
+		 */
+		void writeTo(StringBuilder pending);
+	}
 }
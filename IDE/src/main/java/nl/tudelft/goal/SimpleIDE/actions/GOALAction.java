@@ -18,6 +18,7 @@
 
 package nl.tudelft.goal.SimpleIDE.actions;
 
+import goal.tools.debugger.SteppingDebugger.RunMode;
 import goal.tools.errorhandling.Resources;
 import goal.tools.errorhandling.Warning;
 import goal.tools.errorhandling.WarningStrings;
@@ -38,7 +39,9 @@ import javax.swing.SwingUtilities;
 import nl.tudelft.goal.SimpleIDE.ActionFactory;
 import nl.tudelft.goal.SimpleIDE.IDENode;
 import nl.tudelft.goal.SimpleIDE.IDEState;
+import nl.tudelft.goal.SimpleIDE.IDEStateSnapshot;
 import nl.tudelft.goal.SimpleIDE.IDEfunctionality;
+import nl.tudelft.goal.SimpleIDE.ProcessNode;
 
 /**
  * General GOAL action. Intended for use inside our package only. The function
@@ -144,6 +147,23 @@ public abstract class GOALAction extends AbstractAction {
 	 */
 	public abstract void stateChangeEvent();
 
+	/**
+	 * Returns the run mode of a process node. Use this in
+	 * {@link #stateChangeEvent()}, so that the run mode is computed once for
+	 * all actions.
+	 *
+	 * @param node
+	 *            a node of which the type is a process type.
+	 * @return see {@link ProcessNode#getProcessRunMode()}.
+	 */
+	protected RunMode getProcessRunMode(IDENode node) {
+		if (this.currentState instanceof IDEStateSnapshot) {
+			return ((IDEStateSnapshot) this.currentState)
+					.getProcessRunMode((ProcessNode) node);
+		}
+		return ((ProcessNode) node).getProcessRunMode();
+	}
+
 	@Override
 	/**
 	 * This function is called when the action is activated.
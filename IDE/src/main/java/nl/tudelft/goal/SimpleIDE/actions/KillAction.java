@@ -95,11 +95,11 @@ public class KillAction extends GOALAction {
 		// terminate run environment
 		case AGENT_PROCESS:
 			setDescription("Kill agent"); //$NON-NLS-1$
-			setActionEnabled(((ProcessNode) node).getProcessRunMode() != RunMode.KILLED);
+			setActionEnabled(getProcessRunMode(node) != RunMode.KILLED);
 			break;
 		case ENVIRONMENT_PROCESS:
 			setDescription("Kill environment"); //$NON-NLS-1$
-			setActionEnabled(((ProcessNode) node).getProcessRunMode() != RunMode.KILLED);
+			setActionEnabled(getProcessRunMode(node) != RunMode.KILLED);
 			break;
 		default:
 			throw new RuntimeException("[SimpleIDE] Unknown node type " //$NON-NLS-1$
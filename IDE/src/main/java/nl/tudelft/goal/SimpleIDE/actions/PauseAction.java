@@ -97,19 +97,19 @@ public class PauseAction extends GOALAction {
 			break;
 		case MAS_PROCESS:
 			setDescription("Pause all agents"); //$NON-NLS-1$
-			mode = ((ProcessNode) node).getProcessRunMode();
+			mode = getProcessRunMode(node);
 			setActionEnabled(mode == RunMode.RUNNING
 					|| mode == RunMode.STEPPING);
 			break;
 		case AGENT_PROCESS:
 			setDescription("Pause agent"); //$NON-NLS-1$
-			mode = ((ProcessNode) node).getProcessRunMode();
+			mode = getProcessRunMode(node);
 			setActionEnabled(mode == RunMode.RUNNING
 					|| mode == RunMode.STEPPING);
 			break;
 		case ENVIRONMENT_PROCESS:
 			setDescription("Pause environment"); //$NON-NLS-1$
-			mode = ((ProcessNode) node).getProcessRunMode();
+			mode = getProcessRunMode(node);
 			boolean connected = (this.currentState
 					.isRuntimeEnvironmentAvailable() && LaunchManager
 					.getCurrent().getRuntimeManager().getEnvironmentPorts() != null);
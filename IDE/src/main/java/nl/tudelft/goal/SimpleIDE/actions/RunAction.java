@@ -103,15 +103,15 @@ public class RunAction extends GOALAction {
 			break;
 		case MAS_PROCESS:
 			setDescription("Run all agents"); //$NON-NLS-1$
-			setActionEnabled(((ProcessNode) node).getProcessRunMode() != RunMode.RUNNING);
+			setActionEnabled(getProcessRunMode(node) != RunMode.RUNNING);
 			break;
 		case AGENT_PROCESS:
 			setDescription("Run agent"); //$NON-NLS-1$
-			setActionEnabled(((ProcessNode) node).getProcessRunMode() != RunMode.RUNNING);
+			setActionEnabled(getProcessRunMode(node) != RunMode.RUNNING);
 			break;
 		case ENVIRONMENT_PROCESS:
 			setDescription("Run environment"); //$NON-NLS-1$
-			setActionEnabled(((ProcessNode) node).getProcessRunMode() != RunMode.RUNNING);
+			setActionEnabled(getProcessRunMode(node) != RunMode.RUNNING);
 			break;
 		case REMOTE_ENVIRONMENT_PROCESS:
 			setActionEnabled(false);
@@ -103,7 +103,7 @@ public class StepAction extends GOALAction {
 		case MAS_PROCESS:
 		case AGENT_PROCESS:
 			setDescription("Step " + nameOfNode(node)); //$NON-NLS-1$
-			mode = ((ProcessNode) node).getProcessRunMode();
+			mode = getProcessRunMode(node);
 			setActionEnabled(mode == RunMode.RUNNING || mode == RunMode.PAUSED);
 			break;
 		case ENVIRONMENT_PROCESS:
@@ -112,7 +112,7 @@ public class StepAction extends GOALAction {
 					.isRuntimeEnvironmentAvailable() && LaunchManager
 					.getCurrent().getRuntimeManager().getEnvironmentPorts() != null);
 
-			mode = ((ProcessNode) node).getProcessRunMode();
+			mode = getProcessRunMode(node);
 			setActionEnabled(connected && mode != RunMode.KILLED);
 			break;
 		}
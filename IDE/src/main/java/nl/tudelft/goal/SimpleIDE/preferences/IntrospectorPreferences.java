@@ -35,7 +35,7 @@ public class IntrospectorPreferences {
 	}
 
 	public enum Pref {
-		rememberdbsize, couplequerysize, maxlines, dbsize
+		rememberdbsize, couplequerysize, maxlines, dbsize, refreshinterval, querytimeout
 	}
 
 	private static Preferences myPrefs = Preferences
@@ -50,6 +50,26 @@ public class IntrospectorPreferences {
 		return myPrefs.getInt(Pref.maxlines.toString(), 100);
 	}
 
+	/**
+	 * Get the minimum time between two refreshes of a database panel of an
+	 * introspector. Changes in between are shown together.
+	 *
+	 * @return minimum time between refreshes, in milliseconds.
+	 */
+	public static int getRefreshInterval() {
+		return myPrefs.getInt(Pref.refreshinterval.toString(), 200);
+	}
+
+	/**
+	 * Get the time after which a query or action of an introspector is
+	 * cancelled.
+	 *
+	 * @return query timeout, in milliseconds.
+	 */
+	public static int getQueryTimeout() {
+		return myPrefs.getInt(Pref.querytimeout.toString(), 30000);
+	}
+
 	/**
 	 * get the size of the database area.
 	 *
@@ -93,6 +113,21 @@ public class IntrospectorPreferences {
 		myPrefs.putInt(Pref.maxlines.toString(), maxlines);
 	}
 
+	/**
+	 * the minimum time between two refreshes of a database panel, in
+	 * milliseconds.
+	 */
+	public static void setRefreshInterval(int refreshinterval) {
+		myPrefs.putInt(Pref.refreshinterval.toString(), refreshinterval);
+	}
+
+	/**
+	 * the time after which a query or action is cancelled, in milliseconds.
+	 */
+	public static void setQueryTimeout(int querytimeout) {
+		myPrefs.putInt(Pref.querytimeout.toString(), querytimeout);
+	}
+
 	/**
 	 * the size of the database area.
 	 *
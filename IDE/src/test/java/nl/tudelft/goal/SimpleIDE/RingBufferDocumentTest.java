@@ -0,0 +1,42 @@
+/**
+ * GOAL interpreter that facilitates developing and executing GOAL multi-agent
+ * programs. Copyright (C) 2011 K.V. Hindriks, W. Pasman
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nl.tudelft.goal.SimpleIDE;
+
+import static org.junit.Assert.assertEquals;
+
+import javax.swing.text.BadLocationException;
+
+import org.junit.Test;
+
+public class RingBufferDocumentTest {
+	/**
+	 * Appending more lines than the document holds must not join the rest of
+	 * the appended text to the last line of the old text.
+	 */
+	@Test
+	public void testAppendMoreLinesThanCapacity() throws BadLocationException {
+		RingBufferDocument document = new RingBufferDocument(6, 29);
+		document.insertString(0, "cccc\nbaaabb\n\na\nabb", null); //$NON-NLS-1$
+		document.insertString(document.getLength(), "b\n\n\nccb\nb\n\nb\nc", //$NON-NLS-1$
+				null);
+		assertEquals("\nccb\nb\n\nb\nc", //$NON-NLS-1$
+				document.getText(0, document.getLength()));
+		assertEquals(6, document.getDefaultRootElement().getElementCount());
+	}
+}
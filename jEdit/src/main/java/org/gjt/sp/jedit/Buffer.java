@@ -249,6 +249,8 @@ public class Buffer extends JEditBuffer
 				undoMgr.clear();
 				undoMgr.setLimit(jEdit.getIntegerProperty(
 					"buffer.undoCount",100));
+				undoMgr.setMemoryLimit(1024L * jEdit.getIntegerProperty(
+					"buffer.undoMemory",16384));
 
 				if(!getFlag(TEMPORARY))
 					finishLoading();
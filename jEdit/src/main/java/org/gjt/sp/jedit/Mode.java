@@ -128,9 +128,11 @@ public class Mode
 	//{{{ loadIfNecessary() method
 	/**
 	 * Loads the mode from disk if it hasn't been loaded already.
+	 * Synchronized so that a mode shared between buffers is parsed only
+	 * once, even if several threads ask for its token marker.
 	 * @since jEdit 2.5pre3
 	 */
-	public void loadIfNecessary()
+	public synchronized void loadIfNecessary()
 	{
 		if(marker == null)
 		{
@@ -47,6 +47,12 @@ class PropertyManager
 		loadProps(system,in);
 	} //}}}
 
+	//{{{ loadSystemProps() method
+	void loadSystemProps(Map<String, String> props)
+	{
+		system.putAll(props);
+	} //}}}
+
 	//{{{ loadSiteProps() method
 	void loadSiteProps(InputStream in)
 		throws IOException
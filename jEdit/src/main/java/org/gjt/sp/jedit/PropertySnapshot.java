@@ -0,0 +1,230 @@
+/*
+ * PropertySnapshot.java - Immutable, shared set of default properties
+ * :tabSize=8:indentSize=8:noTabs=false:
+ * :folding=explicit:collapseFolds=1:
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.gjt.sp.jedit;
+
+//{{{ Imports
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+//}}}
+
+/**
+ * An immutable set of properties read from jEdit's built-in property files.
+ * <p>
+ * Each property file is read once per JVM, the first time a snapshot that
+ * needs it is asked for. The snapshots are shared by jEdit's
+ * {@link PropertyManager} and by all standalone text areas, so creating
+ * another text area does not read any property file.
+ * <p>
+ * Code that needs to change properties for one text area or buffer uses an
+ * {@link Overlay}, which keeps its own changes and falls back to the
+ * snapshot for everything else.
+ *
+ * @see jEdit#initSystemProperties()
+ * @see org.gjt.sp.jedit.textarea.StandaloneTextArea#createTextArea
+ */
+public class PropertySnapshot implements IPropertyManager
+{
+	//{{{ getSystemProperties() method
+	/**
+	 * Returns the properties of jedit.props, jedit_gui.props and
+	 * jedit_keys.props, where a later file overrides an earlier one.
+	 * @throws IOException if one of the files can not be read
+	 */
+	public static synchronized PropertySnapshot getSystemProperties()
+		throws IOException
+	{
+		if(systemProperties == null)
+		{
+			systemProperties = new PropertySnapshot(
+				load(JEDIT_PROPS), load(JEDIT_GUI_PROPS),
+				load(JEDIT_KEYS_PROPS));
+		}
+		return systemProperties;
+	} //}}}
+
+	//{{{ getTextAreaProperties() method
+	/**
+	 * Returns the properties used by the standalone text area: those of
+	 * jedit_keys.props, overridden by those of jedit.props.
+	 * @throws IOException if one of the files can not be read
+	 */
+	public static synchronized PropertySnapshot getTextAreaProperties()
+		throws IOException
+	{
+		if(textAreaProperties == null)
+		{
+			textAreaProperties = new PropertySnapshot(
+				load(JEDIT_KEYS_PROPS), load(JEDIT_PROPS));
+		}
+		return textAreaProperties;
+	} //}}}
+
+	//{{{ getProperty() method
+	public String getProperty(String name)
+	{
+		return properties.get(name);
+	} //}}}
+
+	//{{{ getProperties() method
+	/**
+	 * Returns all properties of this snapshot, as an unmodifiable map.
+	 */
+	public Map<String, String> getProperties()
+	{
+		return properties;
+	} //}}}
+
+	//{{{ createOverlay() method
+	/**
+	 * Returns a new, empty overlay on top of this snapshot.
+	 */
+	public Overlay createOverlay()
+	{
+		return new Overlay(this);
+	} //}}}
+
+	//{{{ Overlay class
+	/**
+	 * Properties that override those of a shared snapshot. The overrides
+	 * are copied on write, so reading never takes a lock and the snapshot
+	 * itself is never changed.
+	 */
+	public static class Overlay implements IPropertyManager
+	{
+		//{{{ Overlay constructor
+		Overlay(IPropertyManager parent)
+		{
+			this.parent = parent;
+			this.overrides = Collections.emptyMap();
+		} //}}}
+
+		//{{{ getProperty() method
+		public String getProperty(String name)
+		{
+			Map<String, String> current = overrides;
+			if(current.containsKey(name))
+				return current.get(name);
+			return parent.getProperty(name);
+		} //}}}
+
+		//{{{ setProperty() method
+		/**
+		 * Overrides a property.
+		 * @param name The property name
+		 * @param value The value. null hides the property of the
+		 * snapshot.
+		 */
+		public synchronized void setProperty(String name, String value)
+		{
+			Map<String, String> copy
+				= new HashMap<String, String>(overrides);
+			copy.put(name, value);
+			overrides = copy;
+		} //}}}
+
+		//{{{ resetProperty() method
+		/**
+		 * Removes an override, so that the property of the snapshot
+		 * is used again.
+		 * @param name The property name
+		 */
+		public synchronized void resetProperty(String name)
+		{
+			if(!overrides.containsKey(name))
+				return;
+			Map<String, String> copy
+				= new HashMap<String, String>(overrides);
+			copy.remove(name);
+			overrides = copy;
+		} //}}}
+
+		//{{{ Private members
+		private final IPropertyManager parent;
+		private volatile Map<String, String> overrides;
+		//}}}
+	} //}}}
+
+	//{{{ Private members
+	private static final String JEDIT_PROPS
+		= "/org/gjt/sp/jedit/jedit.props";
+	private static final String JEDIT_GUI_PROPS
+		= "/org/gjt/sp/jedit/jedit_gui.props";
+	private static final String JEDIT_KEYS_PROPS
+		= "/org/gjt/sp/jedit/jedit_keys.props";
+
+	/** The contents of each property file that has been read. */
+	private static final Map<String, Map<String, String>> files
+		= new HashMap<String, Map<String, String>>();
+	private static PropertySnapshot systemProperties;
+	private static PropertySnapshot textAreaProperties;
+
+	private final Map<String, String> properties;
+
+	//{{{ PropertySnapshot constructor
+	/**
+	 * @param layers the properties to combine, where a later one
+	 * overrides an earlier one
+	 */
+	@SafeVarargs
+	private PropertySnapshot(Map<String, String>... layers)
+	{
+		Map<String, String> combined = new HashMap<String, String>();
+		for(Map<String, String> layer : layers)
+			combined.putAll(layer);
+		properties = Collections.unmodifiableMap(combined);
+	} //}}}
+
+	//{{{ load() method
+	private static Map<String, String> load(String resource)
+		throws IOException
+	{
+		Map<String, String> contents = files.get(resource);
+		if(contents != null)
+			return contents;
+
+		InputStream in = jEdit.class.getResourceAsStream(resource);
+		if(in == null)
+			throw new IOException("Resource not found: " + resource);
+
+		Properties props = new Properties();
+		try
+		{
+			props.load(in);
+		}
+		finally
+		{
+			in.close();
+		}
+
+		contents = new HashMap<String, String>(props.size() * 2);
+		for(String name : props.stringPropertyNames())
+			contents.put(name, props.getProperty(name));
+		contents = Collections.unmodifiableMap(contents);
+		files.put(resource, contents);
+		return contents;
+	} //}}}
+
+	//}}}
+}
@@ -0,0 +1,199 @@
+/*
+ * BackgroundTokenizer.java - Tokenizes a buffer in the background
+ * :tabSize=8:indentSize=8:noTabs=false:
+ * :folding=explicit:collapseFolds=1:
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.gjt.sp.jedit.buffer;
+
+//{{{ Imports
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.gjt.sp.jedit.syntax.DummyTokenHandler;
+import org.gjt.sp.jedit.syntax.TokenMarker;
+import org.gjt.sp.util.Log;
+//}}}
+
+/**
+ * A class internal to jEdit's document model. You should not use it
+ * directly.
+ * <p>
+ * Computes the line contexts of a buffer on a background thread, so that
+ * {@link JEditBuffer#markTokens(int,org.gjt.sp.jedit.syntax.TokenHandler)}
+ * does not have to tokenize all lines above the requested one first, for
+ * example after jumping to the end of a large file.
+ * <p>
+ * The lines are tokenized in chunks of a few milliseconds, each with the
+ * read lock held. A chunk is made of small steps, and ends early when
+ * another thread waits for the buffer, so a change to the buffer waits for
+ * one step at most. The token marker is locked for one step at a time, as
+ * it is shared by all buffers of a mode, which are painted in between. The
+ * work starts once the buffer has not changed for a while, and stops as
+ * soon as the buffer changes again; it then starts over from the first
+ * invalid line.
+ * <p>
+ * Only buffers that are shown in a text area are tokenized. The buffer is
+ * referenced weakly, so a pending chunk does not keep a closed buffer in
+ * memory.
+ *
+ * @since jEdit 4.3pre16
+ */
+class BackgroundTokenizer implements Runnable
+{
+	//{{{ BackgroundTokenizer constructor
+	BackgroundTokenizer(JEditBuffer buffer)
+	{
+		this.buffer = new WeakReference<JEditBuffer>(buffer);
+	} //}}}
+
+	//{{{ contentChanged() method
+	/**
+	 * To be called whenever the buffer or its line contexts change.
+	 * Tokenizing stops, and starts over after a while.
+	 */
+	void contentChanged()
+	{
+		lastChange = System.nanoTime();
+		schedule(IDLE_DELAY);
+	} //}}}
+
+	//{{{ run() method
+	public void run()
+	{
+		scheduled.set(false);
+
+		JEditBuffer buffer = this.buffer.get();
+		if(buffer == null || !buffer.hasBufferListeners())
+		{
+			// closed, or no longer shown; a change to the buffer
+			// starts the work again.
+			return;
+		}
+
+		long idle = System.nanoTime() - lastChange;
+		if(idle < TimeUnit.MILLISECONDS.toNanos(IDLE_DELAY))
+		{
+			// changed since it was scheduled
+			schedule(IDLE_DELAY - TimeUnit.NANOSECONDS.toMillis(idle));
+			return;
+		}
+
+		try
+		{
+			if(tokenizeChunk(buffer))
+				schedule(0);
+		}
+		catch(RuntimeException e)
+		{
+			Log.log(Log.ERROR,this,e);
+		}
+	} //}}}
+
+	//{{{ Private members
+	/** Milliseconds the buffer must be unchanged before tokenizing. */
+	private static final long IDLE_DELAY = 300;
+	/** Milliseconds to wait when the buffer is locked. */
+	private static final long RETRY_DELAY = 50;
+	/** Milliseconds to tokenize with the read lock held. */
+	private static final long CHUNK_TIME = 5;
+	/** Number of lines tokenized with the token marker locked. */
+	private static final int STEP_SIZE = 10;
+
+	private static final ScheduledExecutorService executor
+		= new ScheduledThreadPoolExecutor(1,new ThreadFactory()
+	{
+		public Thread newThread(Runnable r)
+		{
+			Thread thread = new Thread(r,"Background tokenizer");
+			thread.setDaemon(true);
+			thread.setPriority(Thread.MIN_PRIORITY);
+			return thread;
+		}
+	});
+
+	private final WeakReference<JEditBuffer> buffer;
+	private final AtomicBoolean scheduled = new AtomicBoolean();
+	private volatile long lastChange;
+
+	//{{{ schedule() method
+	private void schedule(long delay)
+	{
+		if(scheduled.compareAndSet(false,true))
+			executor.schedule(this,delay,TimeUnit.MILLISECONDS);
+	} //}}}
+
+	//{{{ tokenizeChunk() method
+	/**
+	 * Tokenizes the next chunk of invalid lines.
+	 * @return true if there is more to do
+	 */
+	private boolean tokenizeChunk(JEditBuffer buffer)
+	{
+		TokenMarker tokenMarker = buffer.getTokenMarker();
+		if(tokenMarker == null)
+			return false;
+
+		// don't wait for the buffer: it is being changed, so the
+		// work would be thrown away anyway. Nor take it before a
+		// thread that waits for it, which tryReadLock() would do.
+		if(buffer.isLockContended() || !buffer.tryReadLock())
+		{
+			lastChange = System.nanoTime()
+				- TimeUnit.MILLISECONDS.toNanos(
+				IDLE_DELAY - RETRY_DELAY);
+			schedule(RETRY_DELAY);
+			return false;
+		}
+		try
+		{
+			long end = System.nanoTime()
+				+ TimeUnit.MILLISECONDS.toNanos(CHUNK_TIME);
+			do
+			{
+				if(buffer.getTokenMarker() != tokenMarker)
+					return true;
+
+				int first = buffer.getFirstInvalidLineContext();
+				if(first == -1)
+					return false;
+
+				// markTokens() locks the token marker after
+				// the buffer, like every other caller, and
+				// only for this step.
+				int last = Math.min(first + STEP_SIZE,
+					buffer.getLineCount()) - 1;
+				buffer.markTokens(last,DummyTokenHandler.INSTANCE);
+				if(last >= buffer.getLineCount() - 1)
+					return false;
+			}
+			while(System.nanoTime() < end
+				&& !buffer.isLockContended());
+			return true;
+		}
+		finally
+		{
+			buffer.readUnlock();
+		}
+	} //}}}
+
+	//}}}
+}
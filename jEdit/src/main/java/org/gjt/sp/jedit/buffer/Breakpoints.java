@@ -1,9 +1,12 @@
 package org.gjt.sp.jedit.buffer;
 
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 import java.util.Vector;
 
-import org.gjt.sp.jedit.Marker;
-
 /**
  * This class records all breakpoints for a buffer. Under the hood we use the
  * Position objects because they are automatically updated by JEdit.
@@ -12,6 +15,10 @@ import org.gjt.sp.jedit.Marker;
  * however it seems that part is not working as I would expect. Maybe I should
  * read the JEdit doc on how this is supposed to work...
  * 
+ * The breakpoints are kept sorted by position. Edits move positions but never
+ * change their order, so the list stays sorted and can be searched with a
+ * binary search.
+ * 
  * @author W.Pasman 21mar2011
  * 
  */
@@ -26,73 +33,95 @@ public class Breakpoints {
 
 	// {{{ addMarker() method
 	/**
-	 * Adds a marker to this buffer. Copied from Buffer.addMarker.
+	 * Adds a breakpoint to this buffer. A breakpoint at the same position is
+	 * replaced.
 	 * 
 	 * @param pos
-	 *            The position of the marker
-	 * @param shortcut
-	 *            The shortcut ('\0' if none)
-	 * @since jEdit 3.2pre1
+	 *            The position of the breakpoint
+	 * @param type
+	 *            The type of the breakpoint
 	 */
-	public void addBreakpoint(int pos, Breakpoint.Type type) {
-		Breakpoint markerN = new Breakpoint(editbuffer, pos, type);
-		boolean added = false;
-
-		// don't sort markers while buffer is being loaded
-		if (!editbuffer.isLoading()) {
-
-			markerN.createPosition();
-
-			for (int i = 0; i < breakpoints.size(); i++) {
-				Marker marker = breakpoints.get(i);
-
-				if (marker.getPosition() == pos) {
-					breakpoints.removeElementAt(i);
-					i--;
-				}
-			}
-
-			for (int i = 0; i < breakpoints.size(); i++) {
-				Marker marker = breakpoints.get(i);
-				if (marker.getPosition() > pos) {
-					breakpoints.insertElementAt(markerN, i);
-					added = true;
-					break;
-				}
-			}
+	public synchronized void addBreakpoint(int pos, Breakpoint.Type type) {
+		int index = indexOf(pos);
+		while (index < breakpoints.size()
+				&& breakpoints.get(index).getPosition() == pos) {
+			breakpoints.remove(index).removePosition();
 		}
-
-		if (!added)
-			breakpoints.addElement(markerN);
+		breakpoints.insertElementAt(new Breakpoint(editbuffer, pos, type),
+				index);
 	}
 
 	/**
-	 * Removes all breakpoints at the specified line. Copied from
-	 * Buffer.removeMarker. NOTE I find it weird that remove only removes caret
-	 * line breakpoint, while add adds to all selected lines.
+	 * Removes all breakpoints at the specified line. NOTE I find it weird
+	 * that remove only removes caret line breakpoint, while add adds to all
+	 * selected lines.
 	 * 
 	 * @param line
 	 *            The line number
 	 * @since jEdit 3.2pre2
 	 */
-	public void removeBreakpoint(int line) {
-		for (int i = 0; i < breakpoints.size(); i++) {
-			Marker marker = breakpoints.get(i);
-			if (editbuffer.getLineOfOffset(marker.getPosition()) == line) {
-				marker.removePosition();
-				breakpoints.removeElementAt(i);
-				i--;
+	public synchronized void removeBreakpoint(int line) {
+		if (line < 0 || line >= editbuffer.getLineCount()) {
+			return;
+		}
+		int start = indexOf(editbuffer.getLineStartOffset(line));
+		int end = indexOf(editbuffer.getLineEndOffset(line));
+		for (int i = start; i < end; i++) {
+			breakpoints.get(i).removePosition();
+		}
+		breakpoints.subList(start, end).clear();
+	}
+
+	/**
+	 * Replaces all breakpoints by one breakpoint at the start of each of the
+	 * given lines. Breakpoints that are already there with the right type are
+	 * kept, so only the differences are applied. Lines that do not exist in
+	 * the buffer are ignored.
+	 * 
+	 * @param lines
+	 *            maps line numbers to the type of their breakpoint.
+	 */
+	public synchronized void setBreakpoints(Map<Integer, Breakpoint.Type> lines) {
+		Vector<Breakpoint> updated = new Vector<Breakpoint>(lines.size());
+		Set<Integer> kept = new HashSet<Integer>();
+		for (Breakpoint breakpoint : breakpoints) {
+			int line = breakpoint.getLine();
+			if (lines.get(line) == breakpoint.getType()
+					&& breakpoint.getPosition() == editbuffer
+							.getLineStartOffset(line) && kept.add(line)) {
+				updated.add(breakpoint);
+			} else {
+				breakpoint.removePosition();
 			}
 		}
 
+		boolean added = false;
+		for (Map.Entry<Integer, Breakpoint.Type> entry : lines.entrySet()) {
+			int line = entry.getKey();
+			if (!kept.contains(line) && line >= 0
+					&& line < editbuffer.getLineCount()) {
+				updated.add(new Breakpoint(editbuffer, editbuffer
+						.getLineStartOffset(line), entry.getValue()));
+				added = true;
+			}
+		}
+		if (added) {
+			Collections.sort(updated, new Comparator<Breakpoint>() {
+				@Override
+				public int compare(Breakpoint b1, Breakpoint b2) {
+					return b1.getPosition() - b2.getPosition();
+				}
+			});
+		}
+		breakpoints = updated;
 	}
 
 	/**
 	 * get breakpoints. Do NOT use this to change the array!
 	 * 
-	 * @return the breakpoints array.
+	 * @return the breakpoints array, sorted by position.
 	 */
-	public Vector<Breakpoint> getBreakpoints() {
+	public synchronized Vector<Breakpoint> getBreakpoints() {
 		return breakpoints;
 	}
 
@@ -107,15 +136,32 @@ public class Breakpoints {
 	 * @param end
 	 *            The end offset
 	 */
-	public Breakpoint getBreakpointInRange(int start, int end) {
-		for (int i = 0; i < breakpoints.size(); i++) {
-			Breakpoint breakpoint = breakpoints.get(i);
-			int pos = breakpoint.getPosition();
-			if (pos >= start && pos < end)
+	public synchronized Breakpoint getBreakpointInRange(int start, int end) {
+		int index = indexOf(start);
+		if (index < breakpoints.size()) {
+			Breakpoint breakpoint = breakpoints.get(index);
+			if (breakpoint.getPosition() < end)
 				return breakpoint;
 		}
 
 		return null;
 	}
 
-}
\ No newline at end of file
+	/**
+	 * Returns the index of the first breakpoint at or after a position.
+	 */
+	private int indexOf(int pos) {
+		int low = 0;
+		int high = breakpoints.size();
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (breakpoints.get(mid).getPosition() < pos) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+}
@@ -32,6 +32,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.regex.Pattern;
 
@@ -94,6 +95,7 @@ public class JEditBuffer {
 	public static final String ENCODING = "encoding";
 
 	Breakpoints breakpoints = new Breakpoints(this); // see #1603.
+	private final BackgroundTokenizer tokenizer = new BackgroundTokenizer(this);
 
 	// {{{ JEditBuffer constructor
 	public JEditBuffer(Map props) {
@@ -268,6 +270,8 @@ public class JEditBuffer {
 	 */
 	public void readLock() {
 		lock.readLock().lock();
+		if (lock.getReadHoldCount() == 1)
+			readLockCount.incrementAndGet();
 	} // }}}
 
 	// {{{ readUnlock() method
@@ -279,6 +283,29 @@ public class JEditBuffer {
 		lock.readLock().unlock();
 	} // }}}
 
+	// {{{ tryReadLock() method
+	/**
+	 * Takes the read lock if that is possible without waiting.
+	 * 
+	 * @return true if the read lock was taken, and must be released with
+	 *         {@link #readUnlock()}.
+	 */
+	boolean tryReadLock() {
+		if (!lock.readLock().tryLock())
+			return false;
+		if (lock.getReadHoldCount() == 1)
+			readLockCount.incrementAndGet();
+		return true;
+	} // }}}
+
+	// {{{ isLockContended() method
+	/**
+	 * Returns whether a thread is waiting for the read or write lock.
+	 */
+	boolean isLockContended() {
+		return lock.hasQueuedThreads();
+	} // }}}
+
 	// {{{ writeLock() method
 	/**
 	 * Attempting to obtain read lock will block between calls to
@@ -286,6 +313,8 @@ public class JEditBuffer {
 	 */
 	public void writeLock() {
 		lock.writeLock().lock();
+		if (lock.getWriteHoldCount() == 1)
+			writeLockCount.incrementAndGet();
 	} // }}}
 
 	// {{{ writeUnlock() method
@@ -297,6 +326,29 @@ public class JEditBuffer {
 		lock.writeLock().unlock();
 	} // }}}
 
+	// {{{ getReadLockCount() method
+	/**
+	 * Returns how many times a thread took the read lock that did not hold
+	 * it already. Taking it again while holding it is not counted, as it
+	 * never waits for a writer.
+	 * 
+	 * @since jEdit 4.3pre16
+	 */
+	public long getReadLockCount() {
+		return readLockCount.get();
+	} // }}}
+
+	// {{{ getWriteLockCount() method
+	/**
+	 * Returns how many times a thread took the write lock that did not
+	 * hold it already.
+	 * 
+	 * @since jEdit 4.3pre16
+	 */
+	public long getWriteLockCount() {
+		return writeLockCount.get();
+	} // }}}
+
 	// }}}
 
 	// {{{ Line offset methods
@@ -685,8 +737,7 @@ public class JEditBuffer {
 			}
 
 			if (!undoInProgress) {
-				undoMgr.contentInserted(offset, seg.count, seg.toString(),
-						!dirty);
+				undoMgr.contentInserted(offset, seg.count, seg, !dirty);
 			}
 
 			contentInserted(offset, seg.count, integerArray);
@@ -735,6 +786,7 @@ public class JEditBuffer {
 			contentMgr.remove(offset, length);
 			lineMgr.contentRemoved(startLine, offset, numLines, length);
 			positionMgr.contentRemoved(offset, length);
+			tokenizer.contentChanged();
 
 			fireContentRemoved(startLine, offset, numLines, length);
 
@@ -1205,6 +1257,25 @@ public class JEditBuffer {
 	 * @since jEdit 4.1pre1
 	 */
 	public void markTokens(int lineIndex, TokenHandler tokenHandler) {
+		// the token marker is shared by all buffers of a mode, and the
+		// background tokenizer may be using it. The buffer is always
+		// locked before the token marker, as writers call this method
+		// with the write lock held.
+		try {
+			readLock();
+
+			TokenMarker tokenMarker = this.tokenMarker;
+			synchronized (tokenMarker) {
+				markTokens(tokenMarker, lineIndex, tokenHandler);
+			}
+		} finally {
+			readUnlock();
+		}
+	} // }}}
+
+	// {{{ markTokens() method
+	private void markTokens(TokenMarker tokenMarker, int lineIndex,
+			TokenHandler tokenHandler) {
 		Segment seg;
 		if (SwingUtilities.isEventDispatchThread())
 			seg = this.seg;
@@ -1259,6 +1330,15 @@ public class JEditBuffer {
 		return tokenMarker;
 	} // }}}
 
+	// {{{ getFirstInvalidLineContext() method
+	/**
+	 * Returns the first line whose context has to be computed again, or -1
+	 * if all line contexts are valid.
+	 */
+	int getFirstInvalidLineContext() {
+		return lineMgr.getFirstInvalidLineContext();
+	} // }}}
+
 	// {{{ setTokenMarker() method
 	public void setTokenMarker(TokenMarker tokenMarker) {
 		TokenMarker oldTokenMarker = this.tokenMarker;
@@ -1268,6 +1348,7 @@ public class JEditBuffer {
 		// don't do this on initial token marker
 		if (oldTokenMarker != null && tokenMarker != oldTokenMarker) {
 			lineMgr.setFirstInvalidLineContext(0);
+			tokenizer.contentChanged();
 		}
 	} // }}}
 
@@ -2057,10 +2138,13 @@ public class JEditBuffer {
 			Listener _l = bufferListeners.get(i);
 			if (_l.priority < priority) {
 				bufferListeners.add(i, l);
+				tokenizer.contentChanged();
 				return;
 			}
 		}
 		bufferListeners.add(l);
+		// it may not have been tokenized ahead while not shown.
+		tokenizer.contentChanged();
 	} // }}}
 
 	// {{{ addBufferListener() method
@@ -2092,6 +2176,15 @@ public class JEditBuffer {
 		}
 	} // }}}
 
+	// {{{ hasBufferListeners() method
+	/**
+	 * Returns whether any buffer change listener is registered, that is,
+	 * whether the buffer is shown in a text area.
+	 */
+	boolean hasBufferListeners() {
+		return !bufferListeners.isEmpty();
+	} // }}}
+
 	// {{{ getBufferListeners() method
 	/**
 	 * Returns an array of registered buffer change listeners.
@@ -2107,6 +2200,25 @@ public class JEditBuffer {
 		return returnValue;
 	} // }}}
 
+	// {{{ setContent() method
+	/**
+	 * Replaces the whole content of this buffer by text that has already
+	 * been split into lines, without recording an undo edit. The undo
+	 * history is cleared.
+	 * 
+	 * @param seg
+	 *            the new content. The buffer takes ownership of its array,
+	 *            which must start at offset 0.
+	 * @param endOffsets
+	 *            the offset after each line end, followed by
+	 *            <code>seg.count + 1</code>.
+	 * @see org.gjt.sp.jedit.bufferio.JEditBufferLoader
+	 */
+	public void setContent(Segment seg, IntegerArray endOffsets) {
+		loadText(seg, endOffsets);
+		undoMgr.clear();
+	} // }}}
+
 	// {{{ setUndoLimit() method
 	/**
 	 * Set the undo limit of the Undo Manager.
@@ -2120,6 +2232,20 @@ public class JEditBuffer {
 			undoMgr.setLimit(limit);
 	} // }}}
 
+	// {{{ setUndoMemoryLimit() method
+	/**
+	 * Limits the memory used by the undo history. When the history uses
+	 * more, the oldest edits are dropped.
+	 * 
+	 * @param bytes
+	 *            the new limit in bytes
+	 * @since jEdit 4.3pre16
+	 */
+	public void setUndoMemoryLimit(long bytes) {
+		if (undoMgr != null)
+			undoMgr.setMemoryLimit(bytes);
+	} // }}}
+
 	// }}}
 
 	// {{{ Protected members
@@ -2304,6 +2430,7 @@ public class JEditBuffer {
 
 			lineMgr._contentInserted(endOffsets);
 			positionMgr.contentInserted(0, seg.count);
+			tokenizer.contentChanged();
 
 			fireContentInserted(0, 0, endOffsets.getSize() - 1, seg.count - 1);
 		} finally {
@@ -2363,6 +2490,8 @@ public class JEditBuffer {
 	// {{{ Private members
 	private List<Listener> bufferListeners;
 	private final ReentrantReadWriteLock lock;
+	private final AtomicLong readLockCount = new AtomicLong();
+	private final AtomicLong writeLockCount = new AtomicLong();
 	private ContentManager contentMgr;
 	private LineManager lineMgr;
 	private PositionManager positionMgr;
@@ -2399,6 +2528,7 @@ public class JEditBuffer {
 			lineMgr.contentInserted(startLine, offset, numLines, length,
 					endOffsets);
 			positionMgr.contentInserted(offset, length);
+			tokenizer.contentChanged();
 
 			setDirty(true);
 
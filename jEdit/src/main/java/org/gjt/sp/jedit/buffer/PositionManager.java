@@ -24,13 +24,25 @@ package org.gjt.sp.jedit.buffer;
 
 //{{{ Imports
 import javax.swing.text.Position;
-import java.util.*;
-import org.gjt.sp.util.Log;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 //}}}
 
 /**
  * A class internal to jEdit's document model. You should not use it
  * directly.
+ * <p>
+ * The positions are kept sorted in a gap buffer. Positions before the gap
+ * store their offset, positions after the gap store their distance to the
+ * end of the buffer. An insert or remove moves the gap to where the text
+ * changes, after which the positions after the gap move along without
+ * being touched. As most changes are near the previous one, moving the gap
+ * is usually cheap.
+ * <p>
+ * Positions at the same offset share a node. A node is kept as long as one
+ * of its positions is reachable; positions that are garbage collected are
+ * noticed through a reference queue, and nodes without positions are
+ * removed from the gap buffer once they are the majority.
  *
  * @author Slava Pestov
  * @version $Id: PositionManager.java 13125 2008-07-31 09:55:38Z kpouer $
@@ -47,59 +59,180 @@ public class PositionManager
 	//{{{ createPosition() method
 	public synchronized Position createPosition(int offset)
 	{
-		PosBottomHalf bh = new PosBottomHalf(offset);
-		PosBottomHalf existing = positions.get(bh);
-		if(existing == null)
+		expunge();
+
+		int index = indexOf(offset);
+		if(index < size() && getOffset(index) == offset)
 		{
-			positions.put(bh,bh);
-			existing = bh;
+			PosBottomHalf existing = get(index);
+			if(existing.ref == 0)
+				unused--;
+			return new PosTopHalf(existing);
 		}
 
-		return new PosTopHalf(existing);
+		moveGap(index);
+		if(gapStart == gapEnd)
+			grow();
+		PosBottomHalf bh = new PosBottomHalf(offset);
+		nodes[gapStart++] = bh;
+		return new PosTopHalf(bh);
 	} //}}}
 
 	//{{{ contentInserted() method
 	public synchronized void contentInserted(int offset, int length)
 	{
-		if(positions.isEmpty())
-			return;
+		expunge();
+
+		/* positions from offset to the end, inclusive, move */
+		moveGap(indexOf(offset));
+		this.length += length;
+	} //}}}
+
+	//{{{ contentRemoved() method
+	public synchronized void contentRemoved(int offset, int length)
+	{
+		expunge();
+
+		/* positions after the removed text move, positions inside it
+		end up at its start */
+		moveGap(indexOf(offset + length + 1));
+		for(int i = gapStart - 1; i >= 0 && nodes[i].offset > offset; i--)
+			nodes[i].offset = offset;
+		this.length -= length;
+	} //}}}
+
+	//{{{ Private members
+	private static final int MIN_CAPACITY = 16;
+
+	private JEditBuffer buffer;
+
+	// length of the buffer, as far as the positions know
+	private int length;
 
-		/* get all positions from offset to the end, inclusive */
-		Iterator<PosBottomHalf> iter = positions.tailMap(new PosBottomHalf(offset))
-			.keySet().iterator();
+	// sorted nodes, with a gap from gapStart to gapEnd
+	private PosBottomHalf[] nodes = new PosBottomHalf[MIN_CAPACITY];
+	private int gapStart;
+	private int gapEnd = MIN_CAPACITY;
+	// nodes that no longer have positions
+	private int unused;
 
-		iteration = true;
-		while(iter.hasNext())
+	private final ReferenceQueue<PosTopHalf> queue
+		= new ReferenceQueue<PosTopHalf>();
+	// positions that have not been collected yet. The references
+	// must be reachable themselves, or they are never enqueued.
+	private PosRef refs;
+
+	//{{{ size() method
+	private int size()
+	{
+		return nodes.length - (gapEnd - gapStart);
+	} //}}}
+
+	//{{{ get() method
+	private PosBottomHalf get(int index)
+	{
+		return nodes[index < gapStart ? index : index + gapEnd - gapStart];
+	} //}}}
+
+	//{{{ getOffset() method
+	private int getOffset(int index)
+	{
+		return get(index).getOffset();
+	} //}}}
+
+	//{{{ indexOf() method
+	/**
+	 * Returns the index of the first node at or after the given offset,
+	 * or the number of nodes if there is none.
+	 */
+	private int indexOf(int offset)
+	{
+		int low = 0;
+		int high = size();
+		while(low < high)
 		{
-			iter.next().contentInserted(offset,length);
+			int mid = (low + high) >>> 1;
+			if(getOffset(mid) < offset)
+				low = mid + 1;
+			else
+				high = mid;
 		}
-		iteration = false;
+		return low;
 	} //}}}
 
-	//{{{ contentRemoved() method
-	public synchronized void contentRemoved(int offset, int length)
+	//{{{ moveGap() method
+	/**
+	 * Moves the gap so that it starts at the given index. Nodes that
+	 * cross it change how they store their offset.
+	 */
+	private void moveGap(int index)
 	{
-		if(positions.isEmpty())
-			return;
+		while(gapStart > index)
+		{
+			PosBottomHalf bh = nodes[--gapStart];
+			nodes[gapStart] = null;
+			bh.offset = length - bh.offset;
+			bh.afterGap = true;
+			nodes[--gapEnd] = bh;
+		}
+		while(gapStart < index)
+		{
+			PosBottomHalf bh = nodes[gapEnd];
+			nodes[gapEnd++] = null;
+			bh.offset = length - bh.offset;
+			bh.afterGap = false;
+			nodes[gapStart++] = bh;
+		}
+	} //}}}
 
-		/* get all positions from offset to the end, inclusive */
-		Iterator<PosBottomHalf> iter = positions.tailMap(new PosBottomHalf(offset))
-			.keySet().iterator();
+	//{{{ grow() method
+	/**
+	 * Makes room in the gap, by leaving out unused nodes or else by
+	 * doubling the capacity.
+	 */
+	private void grow()
+	{
+		int used = size() - unused;
+		int capacity = Math.max(MIN_CAPACITY,
+			used * 2 > nodes.length ? nodes.length * 2 : nodes.length);
+		PosBottomHalf[] newNodes = new PosBottomHalf[capacity];
 
-		iteration = true;
-		while(iter.hasNext())
+		int start = 0;
+		for(int i = 0; i < gapStart; i++)
+		{
+			if(nodes[i].ref != 0)
+				newNodes[start++] = nodes[i];
+		}
+		int end = capacity;
+		for(int i = nodes.length - 1; i >= gapEnd; i--)
 		{
-			iter.next().contentRemoved(offset,length);
+			if(nodes[i].ref != 0)
+				newNodes[--end] = nodes[i];
 		}
-		iteration = false;
 
+		nodes = newNodes;
+		gapStart = start;
+		gapEnd = end;
+		unused = 0;
 	} //}}}
 
-	boolean iteration;
+	//{{{ expunge() method
+	/**
+	 * Releases the nodes of positions that have been garbage collected.
+	 */
+	private void expunge()
+	{
+		PosRef ref;
+		while((ref = (PosRef)queue.poll()) != null)
+		{
+			ref.unlink();
+			if(--ref.bh.ref == 0)
+				unused++;
+		}
+		if(unused > MIN_CAPACITY && unused * 2 > size())
+			grow();
+	} //}}}
 
-	//{{{ Private members
-	private JEditBuffer buffer;
-	private SortedMap<PosBottomHalf, PosBottomHalf> positions = new TreeMap<PosBottomHalf, PosBottomHalf>();
 	//}}}
 
 	//{{{ Inner classes
@@ -113,30 +246,27 @@ public class PositionManager
 		PosTopHalf(PosBottomHalf bh)
 		{
 			this.bh = bh;
-			bh.ref();
+			bh.ref++;
+			new PosRef(this);
 		} //}}}
 
 		//{{{ getOffset() method
 		public int getOffset()
-		{
-			return bh.offset;
-		} //}}}
-
-		//{{{ finalize() method
-		@Override
-		protected void finalize()
 		{
 			synchronized(PositionManager.this)
 			{
-				bh.unref();
+				return bh.getOffset();
 			}
 		} //}}}
 	} //}}}
 
 	//{{{ PosBottomHalf class
-	class PosBottomHalf implements Comparable<PosBottomHalf>
+	class PosBottomHalf
 	{
+		// the offset, or the distance to the end if afterGap
 		int offset;
+		boolean afterGap;
+		// number of positions that are not collected yet
 		int ref;
 
 		//{{{ PosBottomHalf constructor
@@ -145,63 +275,43 @@ public class PositionManager
 			this.offset = offset;
 		} //}}}
 
-		//{{{ ref() method
-		void ref()
+		//{{{ getOffset() method
+		int getOffset()
 		{
-			ref++;
+			return afterGap ? length - offset : offset;
 		} //}}}
+	} //}}}
 
-		//{{{ unref() method
-		void unref()
-		{
-			if(--ref == 0)
-				positions.remove(this);
-		} //}}}
+	//{{{ PosRef class
+	/**
+	 * Notices when a position is garbage collected. The references are
+	 * kept in a linked list, so that they stay reachable.
+	 */
+	class PosRef extends WeakReference<PosTopHalf>
+	{
+		final PosBottomHalf bh;
+		PosRef prev, next;
 
-		//{{{ contentInserted() method
-		void contentInserted(int offset, int length)
+		//{{{ PosRef constructor
+		PosRef(PosTopHalf pos)
 		{
-			if(offset > this.offset)
-				throw new ArrayIndexOutOfBoundsException();
-			this.offset += length;
-			checkInvariants();
+			super(pos,queue);
+			bh = pos.bh;
+			next = refs;
+			if(next != null)
+				next.prev = this;
+			refs = this;
 		} //}}}
 
-		//{{{ contentRemoved() method
-		void contentRemoved(int offset, int length)
+		//{{{ unlink() method
+		void unlink()
 		{
-			if(offset > this.offset)
-				throw new ArrayIndexOutOfBoundsException();
-			if(this.offset <= offset + length)
-				this.offset = offset;
+			if(prev == null)
+				refs = next;
 			else
-				this.offset -= length;
-			checkInvariants();
-		} //}}}
-
-		//{{{ equals() method
-		@Override
-		public boolean equals(Object o)
-		{
-			if(!(o instanceof PosBottomHalf))
-				return false;
-
-			return ((PosBottomHalf)o).offset == offset;
-		} //}}}
-
-		//{{{ compareTo() method
-		public int compareTo(PosBottomHalf posBottomHalf)
-		{
-			if(iteration)
-				Log.log(Log.ERROR,this,"Consistency failure");
-			return offset - posBottomHalf.offset;
-		} //}}}
-		
-		//{{{ checkInvariants() method
-		private void checkInvariants()
-		{
-			if(offset < 0 || offset > buffer.getLength())
-				throw new ArrayIndexOutOfBoundsException();
+				prev.next = next;
+			if(next != null)
+				next.prev = prev;
 		} //}}}
 	} //}}}
 
@@ -23,6 +23,8 @@
 package org.gjt.sp.jedit.buffer;
 
 //{{{ Imports
+import javax.swing.text.Segment;
+
 import org.gjt.sp.util.Log;
 //}}}
 
@@ -32,6 +34,14 @@ import org.gjt.sp.util.Log;
  * check for out of bounds access, nor are they thread-safe. The
  * <code>Buffer</code> class, through which these methods must be
  * called through, implements such protection.
+ * <p>
+ * The history is limited both by the number of edits and by an estimate of
+ * the memory it uses; the oldest edits are dropped first. Inserted text is
+ * not kept in a <code>String</code> per edit, but appended to one shared
+ * char array, the arena, and each insert refers to its own range of it.
+ * Merging typed text into the previous insert only appends to the arena.
+ * When the arena is full, the text of the edits that were dropped is
+ * discarded, and the arena only grows if the remaining text does not fit.
  *
  * @author Slava Pestov
  * @version $Id: UndoManager.java 13283 2008-08-12 18:31:39Z k_satoda $
@@ -51,11 +61,48 @@ public class UndoManager
 		this.limit = limit;
 	} //}}}
 
+	//{{{ setMemoryLimit() method
+	/**
+	 * Limits the memory used by the undo history. When it uses more,
+	 * the oldest edits are dropped, except for the last one. The limit
+	 * is taken into account when the next edit is added.
+	 * @param bytes the limit in bytes. By default there is no limit.
+	 * @since jEdit 4.3pre16
+	 */
+	public void setMemoryLimit(long bytes)
+	{
+		this.memoryLimit = bytes;
+	} //}}}
+
+	//{{{ getMemoryUsage() method
+	/**
+	 * Returns an estimate of the memory used by the undo and redo
+	 * history, in bytes.
+	 * @since jEdit 4.3pre16
+	 */
+	public long getMemoryUsage()
+	{
+		return memoryUsage;
+	} //}}}
+
 	//{{{ clear() method
 	public void clear()
 	{
 		undosFirst = undosLast = redosFirst = redosLast = null;
 		undoCount = 0;
+		if(compoundEdit == null)
+		{
+			memoryUsage = 0;
+			arena = new char[MIN_ARENA_SIZE];
+			arenaLength = 0;
+			arenaLive = 0;
+		}
+		else
+		{
+			// the edits of the compound edit are still to be added
+			memoryUsage = sizeOf(compoundEdit) - EDIT_SIZE;
+			arenaLive = arenaChars(compoundEdit);
+		}
 	} //}}}
 
 	//{{{ undo() method
@@ -124,7 +171,10 @@ public class UndoManager
 			else if(compoundEdit.first == compoundEdit.last)
 				addEdit(compoundEdit.first);
 			else
+			{
+				memoryUsage += EDIT_SIZE;
 				addEdit(compoundEdit);
+			}
 
 			compoundEdit = null;
 		}
@@ -139,7 +189,7 @@ public class UndoManager
 	} //}}}
 
 	//{{{ contentInserted() method
-	public void contentInserted(int offset, int length, String text, boolean clearDirty)
+	public void contentInserted(int offset, int length, CharSequence text, boolean clearDirty)
 	{
 		Edit last = getLastEdit();
 		Edit toMerge = getMergeEdit();
@@ -150,19 +200,19 @@ public class UndoManager
 			Insert ins = (Insert)toMerge;
 			if(ins.offset == offset)
 			{
-				ins.str = text.concat(ins.str);
-				ins.length += length;
+				prependToArena(ins,text,length);
 				return;
 			}
 			else if(ins.offset + ins.length == offset)
 			{
-				ins.str = ins.str.concat(text);
-				ins.length += length;
+				appendToArena(ins,text,length);
 				return;
 			}
 		}
 
-		Insert ins = new Insert(this,offset,length,text);
+		Insert ins = new Insert(this,offset,0);
+		memoryUsage += EDIT_SIZE;
+		appendToArena(ins,text,length);
 
 		if(clearDirty)
 		{
@@ -191,6 +241,7 @@ public class UndoManager
 				rem.content.str = rem.content.str.concat(text);
 				rem.content.hashcode = rem.content.str.hashCode();
 				rem.length += length;
+				memoryUsage += 2L * length;
 				KillRing.getInstance().changed(rem.content);
 				return;
 			}
@@ -200,12 +251,14 @@ public class UndoManager
 				rem.content.hashcode = rem.content.str.hashCode();
 				rem.length += length;
 				rem.offset = offset;
+				memoryUsage += 2L * length;
 				KillRing.getInstance().changed(rem.content);
 				return;
 			}
 		}
 
 		Remove rem = new Remove(this,offset,length,text);
+		memoryUsage += EDIT_SIZE + 2L * length;
 		if(clearDirty)
 		{
 			redoClearDirty = last;
@@ -248,11 +301,30 @@ public class UndoManager
 	private int compoundEditCount;
 	private CompoundEdit compoundEdit;
 	private Edit undoClearDirty, redoClearDirty;
+
+	// estimated size of an edit object, without its text
+	private static final int EDIT_SIZE = 48;
+	private static final int MIN_ARENA_SIZE = 1024;
+
+	private long memoryLimit = Long.MAX_VALUE;
+	// estimated size of all edits, including those of compoundEdit,
+	// but not compoundEdit itself
+	private long memoryUsage;
+
+	// text of all inserts. Each insert owns a range of it; text
+	// outside these ranges belongs to edits that were dropped.
+	private char[] arena = new char[MIN_ARENA_SIZE];
+	private int arenaLength;
+	// number of chars in arena that are owned by an insert
+	private int arenaLive;
 	//}}}
 
 	//{{{ addEdit() method
 	private void addEdit(Edit edit)
 	{
+		for(Edit redo = redosFirst; redo != null; redo = redo.next)
+			dropped(redo);
+
 		if(undosFirst == null)
 			undosFirst = undosLast = edit;
 		else
@@ -266,9 +338,11 @@ public class UndoManager
 
 		undoCount++;
 
-		while(undoCount > limit)
+		while(undoCount > limit
+			|| (memoryUsage > memoryLimit && undosFirst != undosLast))
 		{
 			undoCount--;
+			dropped(undosFirst);
 
 			if(undosFirst == undosLast)
 				undosFirst = undosLast = null;
@@ -280,6 +354,166 @@ public class UndoManager
 		}
 	} //}}}
 
+	//{{{ dropped() method
+	/**
+	 * Stops counting the memory of an edit that is no longer in the
+	 * history.
+	 */
+	private void dropped(Edit edit)
+	{
+		memoryUsage -= sizeOf(edit);
+		arenaLive -= arenaChars(edit);
+	} //}}}
+
+	//{{{ sizeOf() method
+	/**
+	 * Returns the estimated size of an edit and its text, in bytes.
+	 */
+	private static long sizeOf(Edit edit)
+	{
+		long size = EDIT_SIZE;
+		if(edit instanceof CompoundEdit)
+		{
+			for(Edit e = ((CompoundEdit)edit).first; e != null; e = e.next)
+				size += sizeOf(e);
+		}
+		else if(edit instanceof Insert)
+			size += 2L * ((Insert)edit).length;
+		else
+			size += 2L * ((Remove)edit).length;
+		return size;
+	} //}}}
+
+	//{{{ arenaChars() method
+	/**
+	 * Returns the number of chars of the arena that an edit owns.
+	 */
+	private static int arenaChars(Edit edit)
+	{
+		if(edit instanceof CompoundEdit)
+		{
+			int chars = 0;
+			for(Edit e = ((CompoundEdit)edit).first; e != null; e = e.next)
+				chars += arenaChars(e);
+			return chars;
+		}
+		else if(edit instanceof Insert)
+			return ((Insert)edit).length;
+		else
+			return 0;
+	} //}}}
+
+	//{{{ appendToArena() method
+	/**
+	 * Adds text to the end of an insert.
+	 */
+	private void appendToArena(Insert ins, CharSequence text, int length)
+	{
+		reserve(length);
+		if(ins.start + ins.length != arenaLength)
+		{
+			// text of another insert follows, move this one to
+			// the end first.
+			reserve(ins.length + length);
+			System.arraycopy(arena,ins.start,arena,arenaLength,
+				ins.length);
+			ins.start = arenaLength;
+			arenaLength += ins.length;
+		}
+		getChars(text,length,arena,arenaLength);
+		arenaLength += length;
+		ins.length += length;
+		arenaLive += length;
+		memoryUsage += 2L * length;
+	} //}}}
+
+	//{{{ prependToArena() method
+	/**
+	 * Adds text to the start of an insert. Unlike appending, this copies
+	 * the text of the insert.
+	 */
+	private void prependToArena(Insert ins, CharSequence text, int length)
+	{
+		reserve(ins.length + length);
+		getChars(text,length,arena,arenaLength);
+		System.arraycopy(arena,ins.start,arena,arenaLength + length,
+			ins.length);
+		ins.start = arenaLength;
+		arenaLength += length + ins.length;
+		ins.length += length;
+		arenaLive += length;
+		memoryUsage += 2L * length;
+	} //}}}
+
+	//{{{ reserve() method
+	/**
+	 * Makes room for the given number of chars at the end of the arena.
+	 * If there is no room, the text of all inserts is copied to the
+	 * start of a new arena, in history order, which updates their start.
+	 */
+	private void reserve(int length)
+	{
+		if(arenaLength + length <= arena.length)
+			return;
+
+		int needed = arenaLive + length;
+		int size = Math.max(arena.length,MIN_ARENA_SIZE);
+		// grow if more than half would be in use, shrink if less
+		// than a quarter would be.
+		while(needed > size / 2)
+			size = size * 2;
+		while(size > MIN_ARENA_SIZE && needed < size / 4)
+			size = size / 2;
+
+		char[] newArena = new char[size];
+		arenaLength = 0;
+		// the insert that is merged into is moved last, so that
+		// it stays at the end.
+		for(Edit e = undosFirst; e != null; e = (e == undosLast ? null : e.next))
+			compact(e,newArena);
+		for(Edit e = redosFirst; e != null; e = e.next)
+			compact(e,newArena);
+		if(compoundEdit != null)
+			compact(compoundEdit,newArena);
+		arena = newArena;
+	} //}}}
+
+	//{{{ compact() method
+	private void compact(Edit edit, char[] newArena)
+	{
+		if(edit instanceof CompoundEdit)
+		{
+			for(Edit e = ((CompoundEdit)edit).first; e != null; e = e.next)
+				compact(e,newArena);
+		}
+		else if(edit instanceof Insert)
+		{
+			Insert ins = (Insert)edit;
+			System.arraycopy(arena,ins.start,newArena,arenaLength,
+				ins.length);
+			ins.start = arenaLength;
+			arenaLength += ins.length;
+		}
+	} //}}}
+
+	//{{{ getChars() method
+	private static void getChars(CharSequence text, int length,
+		char[] dest, int destPos)
+	{
+		if(text instanceof String)
+			((String)text).getChars(0,length,dest,destPos);
+		else if(text instanceof Segment)
+		{
+			Segment seg = (Segment)text;
+			System.arraycopy(seg.array,seg.offset,dest,destPos,length);
+		}
+		else
+		{
+			for(int i = 0; i < length; i++)
+				dest[destPos + i] = text.charAt(i);
+		}
+	} //}}}
+
 	//{{{ getMergeEdit() method
 	private Edit getMergeEdit()
 	{
@@ -318,12 +552,11 @@ public class UndoManager
 	static class Insert extends Edit
 	{
 		//{{{ Insert constructor
-		Insert(UndoManager mgr, int offset, int length, String str)
+		Insert(UndoManager mgr, int offset, int length)
 		{
 			this.mgr = mgr;
 			this.offset = offset;
 			this.length = length;
-			this.str = str;
 		} //}}}
 
 		//{{{ undo() method
@@ -338,7 +571,9 @@ public class UndoManager
 		//{{{ redo() method
 		int redo()
 		{
-			mgr.buffer.insert(offset,str);
+			// the buffer copies the text, and does not call back
+			// into the undo manager while redoing.
+			mgr.buffer.insert(offset,new Segment(mgr.arena,start,length));
 			if(mgr.redoClearDirty == this)
 				mgr.buffer.setDirty(false);
 			return offset + length;
@@ -347,7 +582,8 @@ public class UndoManager
 		UndoManager mgr;
 		int offset;
 		int length;
-		String str;
+		// start of the text in the arena of mgr
+		int start;
 	} //}}}
 
 	//{{{ RemovedContent clas
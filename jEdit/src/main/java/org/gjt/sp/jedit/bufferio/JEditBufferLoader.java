@@ -0,0 +1,332 @@
+/*
+ * JEditBufferLoader.java - Loads a file straight into a JEditBuffer
+ * :tabSize=8:indentSize=8:noTabs=false:
+ * :folding=explicit:collapseFolds=1:
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.gjt.sp.jedit.bufferio;
+
+//{{{ Imports
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+import javax.swing.text.Segment;
+
+import org.gjt.sp.jedit.buffer.JEditBuffer;
+import org.gjt.sp.jedit.io.Encoding;
+import org.gjt.sp.jedit.io.EncodingServer;
+import org.gjt.sp.jedit.io.EncodingWithBOM;
+import org.gjt.sp.util.IntegerArray;
+import org.gjt.sp.util.SegmentBuffer;
+//}}}
+
+/**
+ * Loads a file into a {@link JEditBuffer} that is not backed by a
+ * {@link org.gjt.sp.jedit.Buffer}, as used by the standalone text area.
+ * <p>
+ * The file is read into a byte array in one go and decoded directly into
+ * the char array that becomes the buffer's content. The file is not
+ * memory-mapped, as a mapped file stays locked on Windows until the
+ * mapping is garbage collected. Line ends are recorded in an
+ * {@link IntegerArray} while scanning, and the result is handed to
+ * {@link JEditBuffer#setContent(Segment, IntegerArray)}. No intermediate
+ * Strings are created, so loading is linear in the file size.
+ * <p>
+ * Line separators are normalized to \n the same way
+ * {@link BufferIORequest#read} does, and the detected separator is stored
+ * in the {@link JEditBuffer#LINESEP} property. A non-empty file that does
+ * not end with a newline gets one appended.
+ * <p>
+ * The encoding is stored in the {@link JEditBuffer#ENCODING} property
+ * including the byte order mark, if the file has one, so that
+ * {@link #getEncoding(String)} writes the file back with the same mark.
+ */
+public class JEditBufferLoader
+{
+	//{{{ load() method
+	/**
+	 * Replaces the contents of the buffer with the contents of the file.
+	 * The encoding is taken from a byte order mark if the file has one,
+	 * and from the buffer's {@link JEditBuffer#ENCODING} property
+	 * otherwise. Both are resolved like {@link #getEncoding(String)}.
+	 * The undo history of the buffer is cleared.
+	 * @param buffer The buffer to load into
+	 * @param file The file to read
+	 * @throws IOException if the file can not be read
+	 */
+	public static void load(JEditBuffer buffer, File file)
+		throws IOException
+	{
+		FileInputStream in = new FileInputStream(file);
+		SegmentBuffer seg;
+		String encoding;
+		try
+		{
+			FileChannel channel = in.getChannel();
+			long size = channel.size();
+			if(size > Integer.MAX_VALUE)
+			{
+				throw new IOException("File too large to load: "
+					+ file);
+			}
+			ByteBuffer bytes = ByteBuffer.allocate((int)size);
+			while(bytes.hasRemaining())
+			{
+				if(channel.read(bytes) == -1)
+					break;
+			}
+			bytes.flip();
+
+			encoding = detectBOM(bytes);
+			if(encoding == null)
+			{
+				encoding = buffer.getStringProperty(
+					JEditBuffer.ENCODING);
+			}
+
+			String charset = UTF_8_BOM.equals(encoding) ? "UTF-8"
+				: encoding;
+			if(Charset.isSupported(charset))
+			{
+				seg = decode(bytes, Charset.forName(charset));
+			}
+			else
+			{
+				// not a java.nio charset, but possibly an
+				// Encoding service.
+				seg = read(getEncoding(encoding)
+					.getPermissiveTextReader(
+					new ByteArrayInputStream(bytes.array(),
+					0, bytes.limit())), bytes.limit());
+			}
+		}
+		finally
+		{
+			in.close();
+		}
+
+		IntegerArray endOffsets = new IntegerArray(
+			Math.max(1, seg.count / 50));
+		String lineSeparator = splitLines(seg, endOffsets);
+
+		buffer.setContent(seg, endOffsets);
+		buffer.setProperty(JEditBuffer.ENCODING, encoding);
+		if(lineSeparator != null)
+			buffer.setProperty(JEditBuffer.LINESEP, lineSeparator);
+	} //}}}
+
+	//{{{ getEncoding() method
+	/**
+	 * Returns the encoding with the given name, as stored in the
+	 * {@link JEditBuffer#ENCODING} property by
+	 * {@link #load(JEditBuffer, File)}. Its text writer writes the byte
+	 * order mark if the name includes one. Unlike
+	 * {@link EncodingServer#getEncoding(String)}, this also knows UTF-8Y
+	 * without the services of a full jEdit.
+	 * @param name The name of the encoding
+	 * @since jEdit 4.3pre16
+	 */
+	public static Encoding getEncoding(String name)
+	{
+		if(UTF_8_BOM.equals(name))
+			return new EncodingWithBOM("UTF-8");
+		return EncodingServer.getEncoding(name);
+	} //}}}
+
+	//{{{ Private members
+
+	/** UTF-8 with a byte order mark, which is not a java.nio charset. */
+	private static final String UTF_8_BOM = "UTF-8Y";
+
+	//{{{ detectBOM() method
+	/**
+	 * Looks for a byte order mark at the start of the bytes, and returns
+	 * the name of the encoding that reads and writes it, or null if there
+	 * is no mark. The java.nio charsets that are returned for UTF-16 and
+	 * UTF-32 skip the mark themselves; for UTF-8 the position of the
+	 * bytes is moved past it.
+	 */
+	private static String detectBOM(ByteBuffer bytes) throws IOException
+	{
+		byte[] mark = new byte[Math.min(4, bytes.remaining())];
+		for(int i = 0; i < mark.length; i++)
+			mark[i] = bytes.get(i);
+
+		String detected = new EncodingWithBOM.Detector().detectEncoding(
+			new ByteArrayInputStream(mark));
+		if(detected == null)
+			return null;
+
+		if(UTF_8_BOM.equals(detected))
+			bytes.position(3);
+		return detected;
+	} //}}}
+
+	//{{{ decode() method
+	/**
+	 * Decodes the bytes straight into the array of a new SegmentBuffer,
+	 * growing the array only if the initial estimate was too small.
+	 * Malformed input is replaced, like FileReader does.
+	 */
+	private static SegmentBuffer decode(ByteBuffer bytes, Charset charset)
+	{
+		CharsetDecoder decoder = charset.newDecoder()
+			.onMalformedInput(CodingErrorAction.REPLACE)
+			.onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+		// one extra char for a newline appended by splitLines()
+		SegmentBuffer seg = new SegmentBuffer((int)(bytes.remaining()
+			* (double)decoder.averageCharsPerByte()) + 2);
+		CharBuffer out = CharBuffer.wrap(seg.array);
+
+		boolean flushing = false;
+		for(;;)
+		{
+			CoderResult result = flushing ? decoder.flush(out)
+				: decoder.decode(bytes, out, true);
+			if(result.isOverflow())
+			{
+				char[] array = new char[seg.array.length * 2];
+				System.arraycopy(seg.array, 0, array, 0,
+					out.position());
+				int position = out.position();
+				seg.array = array;
+				out = CharBuffer.wrap(array);
+				out.position(position);
+			}
+			else if(flushing)
+				break;
+			else
+				flushing = true;
+		}
+		seg.count = out.position();
+		return seg;
+	} //}}}
+
+	//{{{ read() method
+	/**
+	 * Fallback for encodings that are not a java.nio charset.
+	 */
+	private static SegmentBuffer read(Reader in, int length)
+		throws IOException
+	{
+		SegmentBuffer seg = new SegmentBuffer(length + 2);
+		char[] buf = new char[BufferIORequest.IOBUFSIZE];
+		int len;
+		while((len = in.read(buf, 0, buf.length)) != -1)
+			seg.append(buf, 0, len);
+		return seg;
+	} //}}}
+
+	//{{{ splitLines() method
+	/**
+	 * Converts \r\n and \r line separators to \n in place, and records the
+	 * offset after each newline in endOffsets, followed by the end marker
+	 * that {@link JEditBuffer#setContent} expects.
+	 * @return the line separator used by the file, or null if the file is
+	 * empty
+	 */
+	private static String splitLines(SegmentBuffer seg,
+		IntegerArray endOffsets)
+	{
+		char[] array = seg.array;
+		int count = seg.count;
+		int out = 0;
+
+		// see BufferIORequest.read() for the meaning of these
+		boolean CRLF = false;
+		boolean CROnly = false;
+		boolean lastWasCR = false;
+
+		for(int i = 0; i < count; i++)
+		{
+			char ch = array[i];
+			switch(ch)
+			{
+			case '\r':
+				if(lastWasCR)
+				{
+					CROnly = true;
+					CRLF = false;
+				}
+				else
+					lastWasCR = true;
+				array[out++] = '\n';
+				endOffsets.add(out);
+				break;
+			case '\n':
+				if(lastWasCR)
+				{
+					CROnly = false;
+					CRLF = true;
+					lastWasCR = false;
+				}
+				else
+				{
+					CROnly = false;
+					CRLF = false;
+					array[out++] = '\n';
+					endOffsets.add(out);
+				}
+				break;
+			default:
+				if(lastWasCR)
+				{
+					CROnly = true;
+					CRLF = false;
+					lastWasCR = false;
+				}
+				array[out++] = ch;
+				break;
+			}
+		}
+
+		if(out != 0 && array[out - 1] != '\n')
+		{
+			seg.count = out;
+			seg.append('\n');
+			out = seg.count;
+			endOffsets.add(out);
+		}
+		seg.count = out;
+
+		// add a line marker at the end for proper offset manager
+		// operation
+		endOffsets.add(out + 1);
+
+		if(out == 0)
+			return null;
+		else if(CRLF)
+			return "\r\n";
+		else if(CROnly)
+			return "\r";
+		else
+			return "\n";
+	} //}}}
+
+	//}}}
+}
@@ -281,6 +281,16 @@ public abstract class AbstractInputHandler<E extends JEditAbstractEditAction>
 		return readNextChar != null;
 	} //}}}
 	
+	//{{{ getBindings() method
+	/**
+	 * Returns the key binding table, which can be shared with other input
+	 * handlers by passing it to {@link #setBindings(Hashtable)}.
+	 */
+	public Hashtable getBindings()
+	{
+		return bindings;
+	} //}}}
+
 	//{{{ setBindings() method
 	/**
 	 * Replace the set of key bindings.
@@ -3187,6 +3187,10 @@ public class jEdit
 	//{{{ initSystemProperties() method
 	/**
 	 * Load system properties. Wouter: HACK: made public 
+	 * <p>
+	 * The property files are read only once per JVM, see
+	 * {@link PropertySnapshot#getSystemProperties()}. Calling this again
+	 * resets all properties to the system properties.
 	 */
 	public static void initSystemProperties()
 	{
@@ -3194,12 +3198,8 @@ public class jEdit
 
 		try
 		{
-			propMgr.loadSystemProps(jEdit.class.getResourceAsStream(
-				"/org/gjt/sp/jedit/jedit.props"));
-			propMgr.loadSystemProps(jEdit.class.getResourceAsStream(
-				"/org/gjt/sp/jedit/jedit_gui.props"));
-			propMgr.loadSystemProps(jEdit.class.getResourceAsStream(
-				"/org/gjt/sp/jedit/jedit_keys.props"));
+			propMgr.loadSystemProps(PropertySnapshot
+				.getSystemProperties().getProperties());
 		}
 		catch(Exception e)
 		{
@@ -3216,6 +3216,19 @@ public class jEdit
 		}
 	} //}}}
 
+	//{{{ initSystemPropertiesIfNecessary() method
+	/**
+	 * Loads the system properties, unless that has been done before.
+	 * Unlike {@link #initSystemProperties()}, this keeps properties that
+	 * have been changed since. Used by applications that embed standalone
+	 * text areas.
+	 */
+	public static synchronized void initSystemPropertiesIfNecessary()
+	{
+		if(propMgr == null)
+			initSystemProperties();
+	} //}}}
+
 	//{{{ initSiteProperties() method
 	/**
 	 * Load site properties.
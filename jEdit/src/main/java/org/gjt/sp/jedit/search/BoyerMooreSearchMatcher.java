@@ -52,6 +52,17 @@ public class BoyerMooreSearchMatcher extends SearchMatcher
 		this.ignoreCase = ignoreCase;
 
 		pattern_end = this.pattern.length - 1;
+
+		// created here, so that mayMatch() does not change anything
+		fwd_skip = generateSkipArray(false);
+		fwd_suffix = generateSuffixArray(false);
+	} //}}}
+
+	//{{{ mayMatch() method
+	@Override
+	public boolean mayMatch(CharSequence text)
+	{
+		return match(text,false) != -1;
 	} //}}}
 
 	//{{{ nextMatch() method
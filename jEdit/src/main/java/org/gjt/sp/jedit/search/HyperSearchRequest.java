@@ -26,11 +26,32 @@ package org.gjt.sp.jedit.search;
 import javax.swing.tree.*;
 import javax.swing.*;
 
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+
 import org.gjt.sp.jedit.textarea.Selection;
 import org.gjt.sp.jedit.textarea.JEditTextArea;
 import org.gjt.sp.jedit.io.VFSManager;
+import org.gjt.sp.jedit.buffer.JEditBuffer;
 import org.gjt.sp.jedit.Buffer;
+import org.gjt.sp.jedit.BufferHistory;
 import org.gjt.sp.jedit.GUIUtilities;
+import org.gjt.sp.jedit.MiscUtilities;
 import org.gjt.sp.jedit.jEdit;
 import org.gjt.sp.jedit.View;
 import org.gjt.sp.util.*;
@@ -38,6 +59,11 @@ import org.gjt.sp.util.*;
 
 /**
  * HyperSearch results window.
+ * <p>
+ * When searching a file set, the files are first read and searched on a
+ * fork/join pool. Only the files that may match are then loaded into a
+ * buffer and searched again to build the results, which are shown while
+ * the search goes on.
  * @author Slava Pestov
  * @version $Id: HyperSearchRequest.java 13907 2008-10-19 08:22:44Z k_satoda $
  */
@@ -95,6 +121,7 @@ class HyperSearchRequest extends WorkRequest
 			}
 			else
 			{
+				candidates = prefilter(files);
 				int current = 0;
 
 				long lastStatusTime = 0;
@@ -127,8 +154,12 @@ loop:				for(int i = 0; i < files.length; i++)
 						setValue(current);
 						lastStatusTime = currentTime;
 						results.setSearchStatus(searchingCaption + file);
+						flushResults();
 					}
 
+					if(!isCandidate(candidates.get(i)))
+						continue loop;
+
 					Buffer buffer = jEdit.openTemporary(null,null,file,false);
 					if(buffer == null)
 						continue loop;
@@ -154,6 +185,13 @@ loop:				for(int i = 0; i < files.length; i++)
 		}
 		finally
 		{
+			cancelled = true;
+			if(candidates != null)
+			{
+				for(Future<Boolean> candidate : candidates)
+					candidate.cancel(false);
+			}
+			flushResults();
 			VFSManager.runInAWTThread(new Runnable()
 			{
 				public void run()
@@ -166,6 +204,13 @@ loop:				for(int i = 0; i < files.length; i++)
 
 	//{{{ Private members
 
+	/** Files larger than this are always loaded into a buffer. */
+	private static final long MAX_PREFILTER_LENGTH = 16 * 1024 * 1024;
+	/** The default of the encodingDetectors property. */
+	private static final String DEFAULT_ENCODING_DETECTORS = "BOM XML-PI";
+
+	private static final ForkJoinPool prefilterPool = new ForkJoinPool();
+
 	//{{{ Instance variables
 	private View view;
 	private SearchMatcher matcher;
@@ -174,8 +219,196 @@ loop:				for(int i = 0; i < files.length; i++)
 	private Selection[] selection;
 	private String searchString;
 	private DefaultMutableTreeNode selectNode;
+	private List<DefaultMutableTreeNode> pendingNodes
+		= new ArrayList<DefaultMutableTreeNode>();
+	private List<Future<Boolean>> candidates;
+	private volatile boolean cancelled;
 	//}}}
 
+	//{{{ prefilter() method
+	/**
+	 * Starts looking for the files that may match.
+	 * @return for each file, whether it must be searched in a buffer
+	 */
+	private List<Future<Boolean>> prefilter(String[] files)
+	{
+		// the buffers are loaded with a detected encoding, which
+		// can only be predicted for the default detectors
+		final boolean detectable = DEFAULT_ENCODING_DETECTORS.equals(
+			jEdit.getProperty("encodingDetectors",
+			DEFAULT_ENCODING_DETECTORS).trim());
+		final String defaultEncoding = jEdit.getProperty(
+			"buffer." + JEditBuffer.ENCODING,
+			System.getProperty("file.encoding"));
+
+		List<Future<Boolean>> futures
+			= new ArrayList<Future<Boolean>>(files.length);
+		for(int i = 0; i < files.length; i++)
+		{
+			final String path = files[i];
+			futures.add(prefilterPool.submit(new Callable<Boolean>()
+			{
+				public Boolean call()
+				{
+					if(cancelled || !detectable)
+						return true;
+					try
+					{
+						return mayMatch(path,defaultEncoding);
+					}
+					catch(IOException e)
+					{
+						// let the buffer report it
+						return true;
+					}
+				}
+			}));
+		}
+		return futures;
+	} //}}}
+
+	//{{{ mayMatch() method
+	/**
+	 * Returns false if the file certainly has no match. Called by
+	 * several threads at once.
+	 */
+	private boolean mayMatch(String path, String defaultEncoding)
+		throws IOException
+	{
+		if(jEdit.getBuffer(path) != null || MiscUtilities.isURL(path))
+			return true;
+
+		File file = new File(path);
+		long length = file.length();
+		if(!file.isFile() || length > MAX_PREFILTER_LENGTH)
+			return true;
+
+		// not memory mapped, as that keeps the file locked on
+		// Windows until the mapping is garbage collected
+		byte[] bytes = new byte[(int)length];
+		DataInputStream in = new DataInputStream(
+			new FileInputStream(file));
+		try
+		{
+			in.readFully(bytes);
+			if(in.read() != -1)
+				return true;
+		}
+		finally
+		{
+			IOUtilities.closeQuietly(in);
+		}
+
+		if(isDetected(bytes))
+			return true;
+
+		BufferHistory.Entry entry = BufferHistory.getEntry(path);
+		String encoding = entry != null && entry.encoding != null
+			? entry.encoding : defaultEncoding;
+		CharBuffer chars;
+		try
+		{
+			CharsetDecoder decoder = Charset.forName(encoding)
+				.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPORT)
+				.onUnmappableCharacter(CodingErrorAction.REPORT);
+			chars = decoder.decode(ByteBuffer.wrap(bytes));
+		}
+		catch(IllegalArgumentException e)
+		{
+			// an encoding only jEdit knows
+			return true;
+		}
+		catch(CharacterCodingException e)
+		{
+			return true;
+		}
+		return matcher.mayMatch(toBufferText(chars));
+	} //}}}
+
+	//{{{ isDetected() method
+	/**
+	 * Returns true if a buffer would not be loaded with the default
+	 * encoding of the file, because it starts with a byte order mark,
+	 * is gzipped or is an XML file that may declare its encoding.
+	 */
+	private static boolean isDetected(byte[] bytes)
+	{
+		if(bytes.length < 2)
+			return false;
+		int b0 = bytes[0] & 0xff;
+		int b1 = bytes[1] & 0xff;
+		return (b0 == 0xfe && b1 == 0xff)
+			|| (b0 == 0xff && b1 == 0xfe)
+			|| (b0 == 0xef && b1 == 0xbb)
+			|| (b0 == (GZIPInputStream.GZIP_MAGIC & 0xff)
+				&& b1 == (GZIPInputStream.GZIP_MAGIC >> 8 & 0xff))
+			|| (b0 == '<' && b1 == '?');
+	} //}}}
+
+	//{{{ toBufferText() method
+	/**
+	 * Converts all line separators to \n, as a buffer does when it is
+	 * loaded.
+	 */
+	private static CharSequence toBufferText(CharBuffer chars)
+	{
+		char[] text = chars.array();
+		int start = chars.arrayOffset() + chars.position();
+		int end = start + chars.remaining();
+		int length = start;
+		for(int i = start; i < end; i++)
+		{
+			char ch = text[i];
+			if(ch == '\r')
+			{
+				ch = '\n';
+				if(i + 1 < end && text[i + 1] == '\n')
+					i++;
+			}
+			text[length++] = ch;
+		}
+		return CharBuffer.wrap(text,start,length - start);
+	} //}}}
+
+	//{{{ isCandidate() method
+	/**
+	 * Waits until it is known whether a file may match.
+	 */
+	private boolean isCandidate(Future<Boolean> candidate)
+		throws InterruptedException
+	{
+		try
+		{
+			return candidate.get();
+		}
+		catch(ExecutionException e)
+		{
+			Log.log(Log.ERROR,this,e.getCause());
+			return true;
+		}
+	} //}}}
+
+	//{{{ flushResults() method
+	/**
+	 * Shows the file nodes found since the last call.
+	 */
+	private void flushResults()
+	{
+		if(pendingNodes.isEmpty())
+			return;
+
+		final List<DefaultMutableTreeNode> nodes = pendingNodes;
+		pendingNodes = new ArrayList<DefaultMutableTreeNode>();
+		SwingUtilities.invokeLater(new Runnable()
+		{
+			public void run()
+			{
+				results.searchResultsFound(rootSearchNode,nodes);
+			}
+		});
+	} //}}}
+
 	//{{{ searchInSelection() method
 	private int searchInSelection(Buffer buffer) throws Exception
 	{
@@ -229,7 +462,7 @@ loop:				for(int i = 0; i < files.length; i++)
 		int resultCount = doHyperSearch(buffer,start,end,bufferNode);
 		hyperSearchFileNode.setCount(resultCount);
 		if(resultCount != 0)
-			rootSearchNode.insert(bufferNode,rootSearchNode.getChildCount());
+			pendingNodes.add(bufferNode);
 
 		setAbortable(true);
 
@@ -30,6 +30,7 @@ import javax.swing.tree.*;
 import java.awt.*;
 import java.awt.event.*;
 import java.util.*;
+import java.util.List;
 import org.gjt.sp.jedit.gui.DefaultFocusComponent;
 import org.gjt.sp.jedit.gui.RolloverButton;
 import org.gjt.sp.jedit.msg.*;
@@ -208,6 +209,46 @@ public class HyperSearchResults extends JPanel implements EBComponent,
 		caption.setText(status);
 	} //}}}
 
+	//{{{ searchResultsFound() method
+	/**
+	 * Shows some results of a search that is still going on. Must be
+	 * called in the AWT thread.
+	 * @param searchNode the result node
+	 * @param fileNodes the new file nodes, to be added to the result
+	 * node
+	 * @since jEdit 4.3pre16
+	 */
+	public void searchResultsFound(DefaultMutableTreeNode searchNode,
+		List<DefaultMutableTreeNode> fileNodes)
+	{
+		if(searchNode.getParent() == null)
+		{
+			if(!multiStatus)
+			{
+				for(int i = 0; i < resultTreeRoot.getChildCount(); i++)
+				{
+					resultTreeRoot.remove(0);
+				}
+			}
+
+			resultTreeRoot.add(searchNode);
+			resultTreeModel.reload(resultTreeRoot);
+		}
+
+		int[] indices = new int[fileNodes.size()];
+		for(int i = 0; i < indices.length; i++)
+		{
+			indices[i] = searchNode.getChildCount();
+			searchNode.add(fileNodes.get(i));
+		}
+		resultTreeModel.nodesWereInserted(searchNode,indices);
+
+		for(DefaultMutableTreeNode fileNode : fileNodes)
+		{
+			resultTree.expandPath(new TreePath(fileNode.getPath()));
+		}
+	} //}}}
+
 	//{{{ searchFailed() method
 	public void searchFailed()
 	{
@@ -246,16 +287,20 @@ public class HyperSearchResults extends JPanel implements EBComponent,
 		{
 			public void run()
 			{
-				if(!multiStatus)
+				// already shown by searchResultsFound()
+				if(searchNode.getParent() == null)
 				{
-					for(int i = 0; i < resultTreeRoot.getChildCount(); i++)
+					if(!multiStatus)
 					{
-						resultTreeRoot.remove(0);
+						for(int i = 0; i < resultTreeRoot.getChildCount(); i++)
+						{
+							resultTreeRoot.remove(0);
+						}
 					}
-				}
 
-				resultTreeRoot.add(searchNode);
-				resultTreeModel.reload(resultTreeRoot);
+					resultTreeRoot.add(searchNode);
+					resultTreeModel.reload(resultTreeRoot);
+				}
 
 
 				for (int i = 0; i < nodeCount; i++)
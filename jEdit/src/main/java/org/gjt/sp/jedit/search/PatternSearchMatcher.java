@@ -208,6 +208,20 @@ public class PatternSearchMatcher extends SearchMatcher
 		return returnValue;
 	} //}}}
 
+	//{{{ mayMatch() method
+	@Override
+	public boolean mayMatch(CharSequence text)
+	{
+		// nextMatch() only rejects some of the matches of find()
+		Pattern p = re;
+		if (p == null)
+		{
+			p = Pattern.compile(pattern, flags);
+			re = p;
+		}
+		return p.matcher(text).find();
+	} //}}}
+
 	//{{{ toString() method
 	@Override
 	public String toString()
@@ -226,7 +240,7 @@ public class PatternSearchMatcher extends SearchMatcher
 
 	//{{{ Private members
 	private int flags;
-	private Pattern	re;
+	private volatile Pattern re;
 	private final String pattern;
 	//}}}
 }
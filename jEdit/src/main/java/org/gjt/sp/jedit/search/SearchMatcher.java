@@ -53,6 +53,21 @@ public abstract class SearchMatcher
 	public abstract Match nextMatch(CharSequence text, boolean start,
 		boolean end, boolean firstTime, boolean reverse);
 
+	//{{{ mayMatch() method
+	/**
+	 * Returns false if a whole buffer certainly has no match, so that
+	 * files can be skipped without opening them. Unlike
+	 * {@link #nextMatch(CharSequence,boolean,boolean,boolean,boolean)},
+	 * this can be called by several threads at once. This
+	 * implementation always returns true.
+	 * @param text The text of the buffer
+	 * @since jEdit 4.3pre16
+	 */
+	public boolean mayMatch(CharSequence text)
+	{
+		return true;
+	} //}}}
+
 	protected Match returnValue;
 
 	//{{{ Match class
@@ -28,6 +28,8 @@ import javax.swing.text.*;
 import java.awt.font.*;
 import java.awt.geom.*;
 import java.awt.*;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import org.gjt.sp.jedit.Debug;
 //}}}
@@ -199,6 +201,48 @@ public class Chunk extends Token
 		return -1;
 	} //}}}
 
+	//{{{ clearGlyphCache() method
+	/**
+	 * Forgets all text laid out so far. To be called when the fonts of
+	 * the styles change, as text laid out with the old fonts is not
+	 * used any more.
+	 * @since jEdit 4.3pre16
+	 */
+	public static void clearGlyphCache()
+	{
+		synchronized(glyphCache)
+		{
+			glyphCache.clear();
+		}
+	} //}}}
+
+	//{{{ getGlyphCacheHits() method
+	/**
+	 * Returns how often text did not have to be laid out again, because
+	 * the same text was laid out before with the same font.
+	 * @since jEdit 4.3pre16
+	 */
+	public static long getGlyphCacheHits()
+	{
+		synchronized(glyphCache)
+		{
+			return glyphCacheHits;
+		}
+	} //}}}
+
+	//{{{ getGlyphCacheMisses() method
+	/**
+	 * Returns how often text was laid out.
+	 * @since jEdit 4.3pre16
+	 */
+	public static long getGlyphCacheMisses()
+	{
+		synchronized(glyphCache)
+		{
+			return glyphCacheMisses;
+		}
+	} //}}}
+
 	//{{{ Instance variables
 	public boolean accessable;
 	public boolean visible;
@@ -308,6 +352,24 @@ public class Chunk extends Token
 
 			str = new String(seg.array,seg.offset + offset,length);
 
+			GlyphKey key = new GlyphKey(str,style.getFont(),
+				fontRenderContext);
+			Glyphs glyphs;
+			synchronized(glyphCache)
+			{
+				glyphs = glyphCache.get(key);
+				if(glyphs == null)
+					glyphCacheMisses++;
+				else
+					glyphCacheHits++;
+			}
+			if(glyphs != null)
+			{
+				gv = glyphs.gv;
+				width = glyphs.width;
+				return;
+			}
+
 			char[] textArray = seg.array;
 			int textStart = seg.offset + offset;
 			// {{{ Workaround for a bug in Sun Java 5
@@ -334,12 +396,28 @@ public class Chunk extends Token
 			Rectangle2D logicalBounds = gv.getLogicalBounds();
 
 			width = (float)logicalBounds.getWidth();
+
+			synchronized(glyphCache)
+			{
+				glyphCache.put(key,new Glyphs(gv,width));
+			}
 		}
 	} //}}}
 
 	//{{{ Private members
 	private float[] positions;
 
+	/** The maximum number of text runs in the glyph cache. */
+	private static final int GLYPH_CACHE_SIZE = 2000;
+
+	/**
+	 * The most recently laid out text runs of all text areas. The glyph
+	 * vectors are shared by the chunks, which never change them.
+	 */
+	private static final GlyphCache glyphCache = new GlyphCache();
+	private static long glyphCacheHits;
+	private static long glyphCacheMisses;
+
 	// Flag to enable a workaround for a bug in Sun Java 5.
 	private static final boolean SUN_JAVA_5;
 	static
@@ -359,5 +437,74 @@ public class Chunk extends Token
 		}
 		SUN_JAVA_5 = sun_java_5;
 	}
+
+	//{{{ GlyphKey class
+	/** A run of text with the font it is laid out with. */
+	private static class GlyphKey
+	{
+		private final String str;
+		private final Font font;
+		private final FontRenderContext context;
+		private final int hashCode;
+
+		GlyphKey(String str, Font font, FontRenderContext context)
+		{
+			this.str = str;
+			this.font = font;
+			this.context = context;
+			hashCode = (str.hashCode() * 31 + font.hashCode()) * 31
+				+ context.hashCode();
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return hashCode;
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if(!(obj instanceof GlyphKey))
+				return false;
+			GlyphKey key = (GlyphKey)obj;
+			return hashCode == key.hashCode
+				&& str.equals(key.str)
+				&& font.equals(key.font)
+				&& context.equals(key.context);
+		}
+	} //}}}
+
+	//{{{ Glyphs class
+	/** A run of text that is laid out. */
+	private static class Glyphs
+	{
+		final GlyphVector gv;
+		final float width;
+
+		Glyphs(GlyphVector gv, float width)
+		{
+			this.gv = gv;
+			this.width = width;
+		}
+	} //}}}
+
+	//{{{ GlyphCache class
+	/** A map that forgets the least recently used text runs. */
+	private static class GlyphCache extends LinkedHashMap<GlyphKey, Glyphs>
+	{
+		private static final long serialVersionUID = 1L;
+
+		GlyphCache()
+		{
+			super(GLYPH_CACHE_SIZE,0.75f,true);
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<GlyphKey, Glyphs> eldest)
+		{
+			return size() > GLYPH_CACHE_SIZE;
+		}
+	} //}}}
 	//}}}
 }
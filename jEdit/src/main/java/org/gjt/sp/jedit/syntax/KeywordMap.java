@@ -23,12 +23,21 @@
 package org.gjt.sp.jedit.syntax;
 
 import javax.swing.text.Segment;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.Vector;
 
 /**
  * A <code>KeywordMap</code> is similar to a hashtable in that it maps keys
  * to values. However, the `keys' are Swing segments. This allows lookups of
  * text substrings without the overhead of creating a new string object.
+ * <p>
+ * Lookups are done by walking a trie of all keywords, which is built on
+ * the first lookup after the map changed. With <code>ignoreCase</code>,
+ * the trie has a transition for every case of a character, so that the
+ * text does not have to be converted while it is looked up.
  *
  * @author Slava Pestov, Mike Dillon
  * @version $Id: KeywordMap.java 12504 2008-04-22 23:12:43Z ezust $
@@ -72,20 +81,7 @@ public class KeywordMap
 	{
 		if(length == 0)
 			return Token.NULL;
-		Keyword k = map[getSegmentMapKey(text, offset, length)];
-		while(k != null)
-		{
-			if(length != k.keyword.length)
-			{
-				k = k.next;
-				continue;
-			}
-			if(SyntaxUtilities.regionMatches(ignoreCase,text,offset,
-				k.keyword))
-				return k.id;
-			k = k.next;
-		}
-		return Token.NULL;
+		return getTrie().lookup(text.array,offset,length);
 	} //}}}
 
 	//{{{ add() method
@@ -128,6 +124,7 @@ loop:		for(int i = 0; i < keyword.length; i++)
 		}
 
 		map[key] = new Keyword(keyword,id,map[key]);
+		trie = null;
 	} //}}}
 
 	//{{{ getNonAlphaNumericChars() method
@@ -182,6 +179,7 @@ loop:		for(int i = 0; i < keyword.length; i++)
 	public void setIgnoreCase(boolean ignoreCase)
 	{
 		this.ignoreCase = ignoreCase;
+		trie = null;
 	} //}}}
 
 	//{{{ add() method
@@ -202,6 +200,34 @@ loop:		for(int i = 0; i < keyword.length; i++)
 		}
 	} //}}}
 
+	//{{{ getStatistics() method
+	/**
+	 * Returns a summary of the lookup structure: the number of
+	 * keywords, how many of them are duplicates that lookups never
+	 * return, the number of trie states and transitions, and the
+	 * longest chain of keywords that share a bucket of the map.
+	 * @since jEdit 4.3pre16
+	 */
+	public String getStatistics()
+	{
+		int keywords = 0;
+		int longestChain = 0;
+		for(int i = 0; i < map.length; i++)
+		{
+			int chain = 0;
+			for(Keyword k = map[i]; k != null; k = k.next)
+				chain++;
+			keywords += chain;
+			longestChain = Math.max(longestChain,chain);
+		}
+		Trie t = getTrie();
+		return keywords + " keywords, "
+			+ (keywords - t.keywordCount) + " duplicates, "
+			+ t.ids.length + " states, "
+			+ t.labels.length + " transitions, "
+			+ "longest bucket chain " + longestChain;
+	} //}}}
+
 	//{{{ Private members
 
 	//{{{ Instance variables
@@ -209,8 +235,71 @@ loop:		for(int i = 0; i < keyword.length; i++)
 	private Keyword[] map;
 	private boolean ignoreCase;
 	private StringBuffer noWordSep;
+	/** Built from map when needed; null when the map changed. */
+	private volatile Trie trie;
 	//}}}
 
+	/**
+	 * The characters that have the same upper case, for the upper case
+	 * characters that are not only their own upper case.
+	 */
+	private static Map<Character, char[]> caseVariants;
+
+	//{{{ getTrie() method
+	private Trie getTrie()
+	{
+		Trie t = trie;
+		if(t == null)
+		{
+			t = new Trie(map,ignoreCase);
+			trie = t;
+		}
+		return t;
+	} //}}}
+
+	//{{{ getCaseVariants() method
+	/**
+	 * Returns all characters that match a character when case is
+	 * ignored, that is, the characters with the same upper case.
+	 */
+	private static synchronized char[] getCaseVariants(char upper)
+	{
+		if(caseVariants == null)
+		{
+			Map<Character, StringBuilder> variants
+				= new HashMap<Character, StringBuilder>();
+			for(int ch = 0; ch <= Character.MAX_VALUE; ch++)
+			{
+				char up = Character.toUpperCase((char)ch);
+				if(up == ch)
+					continue;
+				StringBuilder buf = variants.get(up);
+				if(buf == null)
+				{
+					buf = new StringBuilder();
+					if(Character.toUpperCase(up) == up)
+						buf.append(up);
+					variants.put(up,buf);
+				}
+				buf.append((char)ch);
+			}
+			caseVariants = new HashMap<Character, char[]>();
+			for(Map.Entry<Character, StringBuilder> entry
+				: variants.entrySet())
+			{
+				caseVariants.put(entry.getKey(),
+					entry.getValue().toString().toCharArray());
+			}
+		}
+		char[] chars = caseVariants.get(upper);
+		if(chars != null)
+			return chars;
+		else if(Character.toUpperCase(upper) == upper)
+			return new char[] { upper };
+		else
+			return new char[0];
+	} //}}}
+
 	//{{{ getStringMapKey() method
 	private int getStringMapKey(char[] s)
 	{
@@ -243,4 +332,152 @@ loop:		for(int i = 0; i < keyword.length; i++)
 		public byte id;
 		public Keyword next;
 	} //}}}
+
+	//{{{ Trie class
+	/**
+	 * An immutable trie of keywords, stored in flat arrays. The
+	 * transitions of state <code>s</code> are at the indexes
+	 * <code>first[s]</code> up to <code>first[s + 1]</code>, sorted by
+	 * label. State 0 is the start state.
+	 */
+	private static class Trie
+	{
+		final int[] first;
+		final char[] labels;
+		final int[] targets;
+		/** The token of each state, Token.NULL if not a keyword. */
+		final byte[] ids;
+		final int keywordCount;
+		/** The transitions of the start state for ASCII, or -1. */
+		final int[] rootTargets = new int[128];
+
+		Trie(Keyword[] map, boolean ignoreCase)
+		{
+			// build a tree first, with upper case labels when
+			// ignoring case so that all cases share one path
+			Node root = new Node();
+			int nodeCount = 1;
+			int keywordCount = 0;
+			for(int i = 0; i < map.length; i++)
+			{
+				// the chains have the latest keyword first,
+				// which is the one lookups return
+				for(Keyword k = map[i]; k != null; k = k.next)
+				{
+					Node node = root;
+					for(char ch : k.keyword)
+					{
+						if(ignoreCase)
+							ch = Character.toUpperCase(ch);
+						Node child = node.children.get(ch);
+						if(child == null)
+						{
+							child = new Node();
+							node.children.put(ch,child);
+							nodeCount++;
+						}
+						node = child;
+					}
+					if(!node.keyword)
+					{
+						node.keyword = true;
+						node.id = k.id;
+						keywordCount++;
+					}
+				}
+			}
+			this.keywordCount = keywordCount;
+
+			// number the states breadth first, and add the
+			// other cases of each label as transitions
+			Node[] nodes = new Node[nodeCount];
+			nodes[0] = root;
+			first = new int[nodeCount + 1];
+			ids = new byte[nodeCount];
+			StringBuilder labelBuf = new StringBuilder();
+			int[] targetBuf = new int[16];
+			int added = 1;
+			for(int s = 0; s < nodeCount; s++)
+			{
+				Node node = nodes[s];
+				ids[s] = node.id;
+				first[s] = labelBuf.length();
+				TreeMap<Character, Integer> transitions
+					= new TreeMap<Character, Integer>();
+				for(Map.Entry<Character, Node> entry
+					: node.children.entrySet())
+				{
+					int target = added++;
+					nodes[target] = entry.getValue();
+					char label = entry.getKey();
+					if(ignoreCase)
+					{
+						for(char ch : getCaseVariants(label))
+							transitions.put(ch,target);
+					}
+					else
+						transitions.put(label,target);
+				}
+				for(Map.Entry<Character, Integer> entry
+					: transitions.entrySet())
+				{
+					if(labelBuf.length() == targetBuf.length)
+					{
+						targetBuf = Arrays.copyOf(targetBuf,
+							targetBuf.length * 2);
+					}
+					targetBuf[labelBuf.length()] = entry.getValue();
+					labelBuf.append(entry.getKey().charValue());
+				}
+			}
+			first[nodeCount] = labelBuf.length();
+			labels = labelBuf.toString().toCharArray();
+			targets = Arrays.copyOf(targetBuf,labels.length);
+
+			for(char ch = 0; ch < rootTargets.length; ch++)
+				rootTargets[ch] = next(0,ch);
+		}
+
+		byte lookup(char[] text, int offset, int length)
+		{
+			int state;
+			char ch = text[offset];
+			if(ch < rootTargets.length)
+				state = rootTargets[ch];
+			else
+				state = next(0,ch);
+			for(int i = offset + 1; i < offset + length && state > 0; i++)
+				state = next(state,text[i]);
+			return state > 0 ? ids[state] : Token.NULL;
+		}
+
+		/** Returns the state after a transition, or -1. */
+		private int next(int state, char ch)
+		{
+			int start = first[state];
+			int end = first[state + 1];
+			// most states have a few transitions only
+			if(end - start <= 4)
+			{
+				for(int i = start; i < end; i++)
+				{
+					if(labels[i] == ch)
+						return targets[i];
+				}
+				return -1;
+			}
+			int index = Arrays.binarySearch(labels,start,end,ch);
+			return index < 0 ? -1 : targets[index];
+		}
+	} //}}}
+
+	//{{{ Node class
+	/** A state of a trie while it is built. */
+	private static class Node
+	{
+		final Map<Character, Node> children
+			= new HashMap<Character, Node>();
+		boolean keyword;
+		byte id = Token.NULL;
+	} //}}}
 }
@@ -26,11 +26,14 @@ import java.io.BufferedReader;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.gjt.sp.jedit.Mode;
 import org.gjt.sp.util.IOUtilities;
 import org.gjt.sp.util.Log;
+import org.gjt.sp.util.StandardUtilities;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 import org.xml.sax.XMLReader;
@@ -40,6 +43,10 @@ import org.xml.sax.helpers.XMLReaderFactory;
 
 /**
  * This class works like a singleton, the instance is initialized by jEdit.
+ * <p>
+ * Modes are indexed by name. Each mode is registered only once, so its XML is
+ * parsed once and the resulting {@link TokenMarker} is shared by all buffers
+ * that use the mode.
  * 
  * @author Matthieu Casanova
  * @version $Id: Buffer.java 8190 2006-12-07 07:58:34Z kpouer $
@@ -49,10 +56,12 @@ public class ModeProvider {
 	public static ModeProvider instance = new ModeProvider();
 
 	private List<Mode> modes = new ArrayList<Mode>(160);
+	private Map<String, Mode> modesByName = new HashMap<String, Mode>(160);
 
 	// {{{ removeAll() method
-	public void removeAll() {
+	public synchronized void removeAll() {
 		modes = new ArrayList<Mode>(160);
+		modesByName = new HashMap<String, Mode>(160);
 	} // }}}
 
 	// {{{ getMode() method
@@ -63,13 +72,8 @@ public class ModeProvider {
 	 *            The edit mode
 	 * @since jEdit 4.3pre10
 	 */
-	public Mode getMode(String name) {
-		for (int i = 0; i < modes.size(); i++) {
-			Mode mode = modes.get(i);
-			if (mode.getName().equals(name))
-				return mode;
-		}
-		return null;
+	public synchronized Mode getMode(String name) {
+		return modesByName.get(name);
 	} // }}}
 
 	// {{{ getModeForFile() method
@@ -104,7 +108,7 @@ public class ModeProvider {
 	 * 
 	 * @since jEdit 4.3pre10
 	 */
-	public Mode[] getModes() {
+	public synchronized Mode[] getModes() {
 		Mode[] array = new Mode[modes.size()];
 		modes.toArray(array);
 		return array;
@@ -112,15 +116,32 @@ public class ModeProvider {
 
 	// {{{ addMode() method
 	/**
-	 * Do not call this method. It is only public so that classes in the
-	 * org.gjt.sp.jedit.syntax package can access it.
+	 * Registers an edit mode. If a mode with the same name and the same
+	 * "file" property is already registered, the given mode is a duplicate
+	 * and is dropped, so that the registered mode does not have to be parsed
+	 * again. A mode with the same name but another file replaces the
+	 * registered one.
 	 * 
 	 * @since jEdit 4.3pre10
 	 * @param mode
 	 *            The edit mode
+	 * @return the registered mode with the name of the given mode. Use this
+	 *         instead of the given mode, which may have been dropped.
 	 */
-	public void addMode(Mode mode) {
-		modes.add(mode);
+	public synchronized Mode addMode(Mode mode) {
+		Mode registered = modesByName.get(mode.getName());
+		if (registered == null) {
+			modes.add(mode);
+		} else if (registered == mode
+				|| StandardUtilities.objectsEqual(
+						registered.getProperty("file"),
+						mode.getProperty("file"))) {
+			return registered;
+		} else {
+			modes.set(modes.indexOf(registered), mode);
+		}
+		modesByName.put(mode.getName(), mode);
+		return mode;
 	} // }}}
 
 	// {{{ loadMode() method
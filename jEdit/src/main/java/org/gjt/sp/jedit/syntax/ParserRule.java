@@ -80,6 +80,15 @@ public class ParserRule
 	public final char[] start;
 	public final Pattern startRegexp;
 
+	/**
+	 * The characters every match of {@link #startRegexp} starts with, so
+	 * that the regexp only needs to be tried where they appear. It is
+	 * empty if there are none, and null for rules without a regexp.
+	 *
+	 * @since jEdit 4.3pre16
+	 */
+	public final char[] startRegexpPrefix;
+
 	public final int endPosMatch;
 	public final char[] end;
 
@@ -344,6 +353,8 @@ public class ParserRule
 		this.startPosMatch = startPosMatch;
 		this.start = start;
 		this.startRegexp = startRegexp;
+		this.startRegexpPrefix = startRegexp == null ? null
+			: getLiteralPrefix(startRegexp.pattern());
 		this.endPosMatch = endPosMatch;
 		this.end = end;
 		this.delegate = delegate;
@@ -384,6 +395,8 @@ public class ParserRule
 		this.startPosMatch = startPosMatch;
 		this.start = start;
 		this.startRegexp = startRegexp;
+		this.startRegexpPrefix = startRegexp == null ? null
+			: getLiteralPrefix(startRegexp.pattern());
 		this.endPosMatch = endPosMatch;
 		this.end = end;
 		this.delegate = delegate;
@@ -400,5 +413,90 @@ public class ParserRule
 			}
 		}
 	} //}}}
+
+	//{{{ getLiteralPrefix() method
+	/**
+	 * Returns the literal characters a regexp starts with. This is
+	 * conservative: the result is empty when the regexp is not simple
+	 * enough to tell, for example when it has a top-level alternation.
+	 */
+	private static char[] getLiteralPrefix(String regexp)
+	{
+		// a top-level '|' means there is more than one way to start
+		int depth = 0;
+		boolean inClass = false;
+		for(int i = 0; i < regexp.length(); i++)
+		{
+			char ch = regexp.charAt(i);
+			if(ch == '\\')
+			{
+				if(i + 1 < regexp.length()
+					&& regexp.charAt(i + 1) == 'Q')
+				{
+					return new char[0];
+				}
+				i++;
+			}
+			else if(inClass)
+			{
+				if(ch == ']')
+					inClass = false;
+			}
+			else if(ch == '[')
+				inClass = true;
+			else if(ch == '(')
+				depth++;
+			else if(ch == ')')
+				depth--;
+			else if(ch == '|' && depth <= 0)
+				return new char[0];
+		}
+
+		int i = 0;
+		// lookingAt() is anchored already
+		if(regexp.startsWith("^"))
+			i = 1;
+		else if(regexp.startsWith("\\A"))
+			i = 2;
+
+		StringBuilder prefix = new StringBuilder();
+		while(i < regexp.length())
+		{
+			char ch = regexp.charAt(i);
+			int next;
+			if(ch == '\\')
+			{
+				if(i + 1 == regexp.length())
+					break;
+				ch = regexp.charAt(i + 1);
+				// escaped letters and digits are classes,
+				// anchors or back references
+				if(Character.isLetterOrDigit(ch))
+					break;
+				next = i + 2;
+			}
+			else if(".[]{}()*+?|^$".indexOf(ch) != -1)
+				break;
+			else
+				next = i + 1;
+
+			// the character may be optional or repeated
+			char quantifier = next < regexp.length()
+				? regexp.charAt(next) : '\0';
+			if(quantifier == '?' || quantifier == '*'
+				|| quantifier == '{')
+			{
+				break;
+			}
+			prefix.append(ch);
+			if(quantifier == '+')
+				break;
+			i = next;
+		}
+
+		char[] returnValue = new char[prefix.length()];
+		prefix.getChars(0,prefix.length(),returnValue,0);
+		return returnValue;
+	} //}}}
 }
 
@@ -88,7 +88,8 @@ public class ParserRuleSet
 
 	//{{{ resolveImports() method
 	/**
-	 * Resolves all rulesets added with {@link #addRuleSet(ParserRuleSet)}.
+	 * Resolves all rulesets added with {@link #addRuleSet(ParserRuleSet)},
+	 * and prepares the table used by {@link #getRuleArray(char)}.
 	 * @since jEdit 4.2pre3
 	 */
 	public void resolveImports()
@@ -117,6 +118,7 @@ public class ParserRuleSet
 			}
 		}
 		imports.clear();
+		dispatch = new RuleDispatch(ruleMap);
 	} //}}}
 
 	//{{{ addRuleSet() method
@@ -134,6 +136,7 @@ public class ParserRuleSet
 	public void addRule(ParserRule r)
 	{
 		ruleCount++;
+		dispatch = null;
 		Character[] keys;
 		if (null == r.upHashChars)
 		{
@@ -217,6 +220,27 @@ public class ParserRuleSet
 		}
 	} //}}}
 
+	//{{{ getRuleArray() method
+	/**
+	 * Returns the rules that can match at a character, in the order
+	 * they should be tried. Unlike {@link #getRules(Character)}, this
+	 * does not allocate anything; the returned array must not be
+	 * modified.
+	 *
+	 * @param ch The character
+	 * @since jEdit 4.3pre16
+	 */
+	public ParserRule[] getRuleArray(char ch)
+	{
+		RuleDispatch table = dispatch;
+		if(table == null)
+		{
+			table = new RuleDispatch(ruleMap);
+			dispatch = table;
+		}
+		return table.getRules(ch);
+	} //}}}
+
 	//{{{ getRuleCount() method
 	public int getRuleCount()
 	{
@@ -373,6 +397,8 @@ public class ParserRuleSet
 	private int ruleCount;
 
 	private Map<Character, List<ParserRule>> ruleMap;
+	/** Built from ruleMap when needed; null when rules were added. */
+	private volatile RuleDispatch dispatch;
 
 	private final List<ParserRuleSet> imports;
 
@@ -392,5 +418,88 @@ public class ParserRuleSet
 	private String noWordSep;
 
 	private boolean builtIn;
+
+	//{{{ RuleDispatch class
+	/**
+	 * The rules of each character, flattened into arrays. The rules
+	 * without a hash char come after the rules with one. A regexp rule
+	 * without a hash char is only listed under the first character of
+	 * its {@link ParserRule#startRegexpPrefix}, as it cannot match
+	 * elsewhere.
+	 */
+	private static class RuleDispatch
+	{
+		/** The rules of the characters up to 0xFF. */
+		private final ParserRule[][] latin1 = new ParserRule[256][];
+		/** The sorted upper case hash chars, and their rules. */
+		private final char[] keys;
+		private final ParserRule[][] keyRules;
+		/** The rules of the characters without rules of their own. */
+		private final ParserRule[] otherRules;
+
+		RuleDispatch(Map<Character, List<ParserRule>> ruleMap)
+		{
+			List<ParserRule> nullRules = ruleMap.get(null);
+			if(nullRules == null)
+				nullRules = Collections.emptyList();
+
+			SortedSet<Character> keySet = new TreeSet<Character>();
+			List<ParserRule> other = new ArrayList<ParserRule>();
+			for(ParserRule rule : nullRules)
+			{
+				char[] prefix = rule.startRegexpPrefix;
+				if(prefix == null || prefix.length == 0)
+					other.add(rule);
+				else
+					keySet.add(Character.toUpperCase(prefix[0]));
+			}
+			for(Character key : ruleMap.keySet())
+			{
+				if(key != null)
+					keySet.add(key);
+			}
+			otherRules = other.toArray(new ParserRule[other.size()]);
+
+			keys = new char[keySet.size()];
+			keyRules = new ParserRule[keySet.size()][];
+			int i = 0;
+			for(Character key : keySet)
+			{
+				List<ParserRule> rules = new ArrayList<ParserRule>();
+				List<ParserRule> rulesForKey = ruleMap.get(key);
+				if(rulesForKey != null)
+					rules.addAll(rulesForKey);
+				for(ParserRule rule : nullRules)
+				{
+					char[] prefix = rule.startRegexpPrefix;
+					if(prefix == null || prefix.length == 0
+						|| Character.toUpperCase(prefix[0]) == key)
+					{
+						rules.add(rule);
+					}
+				}
+				keys[i] = key;
+				keyRules[i] = rules.toArray(new ParserRule[rules.size()]);
+				i++;
+			}
+
+			for(char ch = 0; ch < latin1.length; ch++)
+				latin1[ch] = lookup(ch);
+		}
+
+		ParserRule[] getRules(char ch)
+		{
+			if(ch < latin1.length)
+				return latin1[ch];
+			return lookup(ch);
+		}
+
+		private ParserRule[] lookup(char ch)
+		{
+			int index = Arrays.binarySearch(keys,
+				Character.toUpperCase(ch));
+			return index < 0 ? otherRules : keyRules[index];
+		}
+	} //}}}
 	//}}}
 }
@@ -25,6 +25,7 @@ package org.gjt.sp.jedit.syntax;
 
 //{{{ Imports
 import javax.swing.text.Segment;
+import java.lang.ref.WeakReference;
 import java.util.*;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -96,6 +97,7 @@ public class TokenMarker
 		// parameters.
 		this.tokenHandler = tokenHandler;
 		this.line = line;
+		lineSequence.seg = line;
 
 		lastOffset = line.offset;
 		lineLength = line.count + line.offset;
@@ -154,8 +156,8 @@ main_loop:	for(pos = line.offset; pos < lineLength; pos++)
 			} //}}}
 
 			//{{{ check every rule
-			Character ch = Character.valueOf(line.array[pos]);
-			List<ParserRule> rules = context.rules.getRules(ch);
+			char ch = line.array[pos];
+			ParserRule[] rules = context.rules.getRuleArray(ch);
 			for (ParserRule rule : rules)
 			{
 				// stop checking rules if there was a match
@@ -256,6 +258,7 @@ unwind:		while(context.parent != null)
 		/* for GC. */
 		this.tokenHandler = null;
 		this.line = null;
+		lineSequence.seg = null;
 
 		return context;
 	} //}}}
@@ -275,6 +278,10 @@ unwind:		while(context.parent != null)
 	private LineContext context;
 	private KeywordMap keywords;
 	private final Segment pattern = new Segment();
+	/** The current line, for the matchers. */
+	private final LineSequence lineSequence = new LineSequence();
+	/** A matcher on {@link #lineSequence} for each regexp used so far. */
+	private final Map<Pattern, Matcher> matchers = new IdentityHashMap<Pattern, Matcher>();
 	private int lastOffset;
 	private int lineLength;
 	private int pos;
@@ -381,7 +388,6 @@ unwind:		while(context.parent != null)
 		} //}}}
 
 		int matchedChars = 1;
-		CharSequence charSeq = null;
 		Matcher match = null;
 
 		//{{{ See if the rule's start or end sequence matches here
@@ -411,23 +417,31 @@ unwind:		while(context.parent != null)
 			}
 			else
 			{
-				// note that all regexps start with \A so they only
-				// match the start of the string
-				//int matchStart = pos - line.offset;
-				charSeq = new SegmentCharSequence(line, pos - line.offset,
-								  line.count - (pos - line.offset));
-				match = checkRule.startRegexp.matcher(charSeq);
+				// skip the regexp if it cannot match here
+				if(!SyntaxUtilities.regionMatches(
+					(checkRule.startRegexp.flags()
+					& Pattern.CASE_INSENSITIVE) != 0,
+					line,pos,checkRule.startRegexpPrefix))
+				{
+					return false;
+				}
+
+				// the region starts at pos, so lookingAt() only
+				// matches the start of the rest of the line
+				int matchStart = pos - line.offset;
+				match = getMatcher(checkRule.startRegexp);
+				match.region(matchStart,line.count);
 				if(!match.lookingAt())
 				{
 					return false;
 				}
-				else if(match.start() != 0)
+				else if(match.start() != matchStart)
 				{
 					throw new InternalError("Can't happen");
 				}
 				else
 				{
-					matchedChars = match.end();
+					matchedChars = match.end() - matchStart;
 					/* workaround for hang if match was
 					 * zero-width. not sure if there is
 					 * a better way to handle this */
@@ -516,7 +530,7 @@ unwind:		while(context.parent != null)
 				 * ...
 				 * EOF
 				 */
-				if(charSeq != null && checkRule.end != null)
+				if(match != null && checkRule.end != null)
 				{
 					spanEndSubst = substitute(match,
 						checkRule.end);
@@ -681,14 +695,10 @@ unwind:		while(context.parent != null)
 					}
 					else
 					{
-						int oldCount = line.count;
-						int oldOffset = line.offset;
-						line.offset = lastOffset;
-						line.count = len;
-						CharSequence seq = new SegmentCharSequence(line);
-						digit = digitRE.matcher(seq).matches();
-						line.offset = oldOffset;
-						line.count = oldCount;
+						Matcher match = getMatcher(digitRE);
+						match.region(lastOffset - line.offset,
+							lastOffset - line.offset + len);
+						digit = match.matches();
 					}
 				}
 			}
@@ -728,6 +738,22 @@ unwind:		while(context.parent != null)
 		} //}}}
 	} //}}}
 
+	//{{{ getMatcher() method
+	/**
+	 * Returns the matcher of a regexp on the current line. It is only
+	 * valid until the next call with the same regexp.
+	 */
+	private Matcher getMatcher(Pattern regexp)
+	{
+		Matcher match = matchers.get(regexp);
+		if(match == null)
+		{
+			match = regexp.matcher(lineSequence);
+			matchers.put(regexp,match);
+		}
+		return match;
+	} //}}}
+
 	//{{{ substitute() method
 	private static char[] substitute(Matcher match, char[] end)
 	{
@@ -804,13 +830,49 @@ unwind:		while(context.parent != null)
 
 	//}}}
 
+	//{{{ LineSequence class
+	/**
+	 * A view of the current line that is reused for all lines, so
+	 * that the matchers can be reused too. The regions of the matchers
+	 * select the part of the line to match.
+	 */
+	private static class LineSequence implements CharSequence
+	{
+		Segment seg;
+
+		public char charAt(int index)
+		{
+			return seg.array[seg.offset + index];
+		}
+
+		public int length()
+		{
+			return seg.count;
+		}
+
+		public CharSequence subSequence(int start, int end)
+		{
+			return new SegmentCharSequence(seg,start,end - start);
+		}
+
+		public String toString()
+		{
+			return new String(seg.array,seg.offset,seg.count);
+		}
+	} //}}}
+
 	//{{{ LineContext class
 	/**
 	 * Stores persistent per-line syntax parser state.
 	 */
 	public static class LineContext
 	{
-		private static final Map<LineContext, LineContext> intern = new HashMap<LineContext, LineContext>();
+		/**
+		 * Interned contexts. A context stays interned as long as it
+		 * is used, for example as the context of a line.
+		 */
+		private static final Map<LineContext, WeakReference<LineContext>> intern
+			= new WeakHashMap<LineContext, WeakReference<LineContext>>();
 
 		public LineContext parent;
 		public ParserRule inRule;
@@ -841,16 +903,24 @@ unwind:		while(context.parent != null)
 		} //}}}
 
 		//{{{ intern() method
+		/**
+		 * Returns the interned context that equals this one. This
+		 * method is thread-safe.
+		 */
 		public LineContext intern()
 		{
-			LineContext obj = intern.get(this);
-			if(obj == null)
+			synchronized(intern)
 			{
-				intern.put(this,this);
-				return this;
+				WeakReference<LineContext> ref = intern.get(this);
+				LineContext obj = (ref == null ? null : ref.get());
+				if(obj == null)
+				{
+					intern.put(this,new WeakReference<LineContext>(this));
+					return this;
+				}
+				else
+					return obj;
 			}
-			else
-				return obj;
 		} //}}}
 
 		//{{{ hashCode() method
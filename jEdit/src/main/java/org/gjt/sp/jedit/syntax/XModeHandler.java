@@ -395,6 +395,14 @@ public abstract class XModeHandler extends DefaultHandler
 		for(int i = 0; i < rulesets.length; i++)
 		{
 			rulesets[i].resolveImports();
+			// builds the lookup structure of the keywords now,
+			// rather than while the first line is tokenized
+			KeywordMap keywords = rulesets[i].getKeywords();
+			if(keywords != null)
+			{
+				Log.log(Log.DEBUG,this,rulesets[i].getName()
+					+ ": " + keywords.getStatistics());
+			}
 		}
 		for(Mode mode : reloadModes)
 		{
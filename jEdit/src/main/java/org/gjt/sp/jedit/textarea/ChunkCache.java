@@ -607,6 +607,21 @@ class ChunkCache
 		if(lastScreenLine < firstInvalidLine)
 			return;
 
+		// one read lock for all lines, not one per line
+		buffer.readLock();
+		try
+		{
+			_updateChunksUpTo(lastScreenLine);
+		}
+		finally
+		{
+			buffer.readUnlock();
+		}
+	} //}}}
+
+	//{{{ _updateChunksUpTo() method
+	private void _updateChunksUpTo(int lastScreenLine)
+	{
 		int firstScreenLine = getFirstScreenLine();
 		int physicalLine = getUpdateStartLine(firstScreenLine);
 
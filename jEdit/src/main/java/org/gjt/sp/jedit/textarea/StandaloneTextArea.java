@@ -37,8 +37,7 @@ import java.awt.Font;
 import java.awt.event.ActionEvent;
 import java.awt.event.MouseEvent;
 import java.io.IOException;
-import java.io.InputStream;
-import java.util.Properties;
+import java.util.Hashtable;
 
 import javax.swing.AbstractAction;
 import javax.swing.JFrame;
@@ -51,6 +50,7 @@ import org.gjt.sp.jedit.IPropertyManager;
 import org.gjt.sp.jedit.JEditActionSet;
 import org.gjt.sp.jedit.JEditBeanShellAction;
 import org.gjt.sp.jedit.Mode;
+import org.gjt.sp.jedit.PropertySnapshot;
 import org.gjt.sp.jedit.ViewInterface;
 import org.gjt.sp.jedit.ViewSubstitute;
 import org.gjt.sp.jedit.jEdit;
@@ -67,7 +67,6 @@ import org.gjt.sp.jedit.syntax.ModeProvider;
 import org.gjt.sp.jedit.syntax.ParserRuleSet;
 import org.gjt.sp.jedit.syntax.SyntaxStyle;
 import org.gjt.sp.jedit.syntax.TokenMarker;
-import org.gjt.sp.util.IOUtilities;
 import org.gjt.sp.util.Log;
 import org.gjt.sp.util.SyntaxUtilities;
 
@@ -97,7 +96,7 @@ import org.gjt.sp.util.SyntaxUtilities;
 		
 		Mode mode = new Mode("goal");
 		mode.setProperty("file","modes/goal.xml");
-		ModeProvider.instance.addMode(mode);
+		mode = ModeProvider.instance.addMode(mode);
 		
 		text.getBuffer().setMode(mode);
 		frame.getContentPane().add(text);
@@ -120,6 +119,14 @@ public class StandaloneTextArea extends TextArea {
 	private final IPropertyManager propertyManager;
 	// }}}
 
+	// {{{ Shared by all standalone text areas
+	/** The actions of textarea.actions.xml. Null until first loaded. */
+	private static JEditBeanShellAction[] sharedActions;
+	/** The key binding table built from {@link #sharedActions}. */
+	private static Hashtable sharedBindings;
+	private static boolean globalsInitialized;
+	// }}}
+
 	ViewInterface the_view = null;
 
 	// {{{ StandaloneTextArea constructor
@@ -144,12 +151,7 @@ public class StandaloneTextArea extends TextArea {
 		// todo : make TextareaTransferHandler standalone
 		// textArea.setTransferHandler(new TextAreaTransferHandler());
 
-		JEditActionSet<JEditBeanShellAction> actionSet = new StandaloneActionSet(
-				propertyManager, this);
-
-		addActionSet(actionSet);
-		actionSet.load();
-		actionSet.initKeyBindings();
+		initActions();
 
 		// {{{ init Style property manager
 		if (SyntaxUtilities.propertyManager == null) {
@@ -159,18 +161,11 @@ public class StandaloneTextArea extends TextArea {
 
 		initTextArea();
 
-		DefaultFoldHandlerProvider foldHandlerProvider = new DefaultFoldHandlerProvider();
-
-		FoldHandler.foldHandlerProvider = foldHandlerProvider;
-		foldHandlerProvider.addFoldHandler(new ExplicitFoldHandler());
-		foldHandlerProvider.addFoldHandler(new IndentFoldHandler());
-		foldHandlerProvider.addFoldHandler(new DummyFoldHandler());
+		initGlobals();
 		// Wouter: would like to call Buffer(String path, boolean newFile,
 		// boolean temp, Map props)
 		JEditBuffer buffer = new JEditBuffer();
-		TokenMarker tokenMarker = new TokenMarker();
-		tokenMarker.addRuleSet(new ParserRuleSet("text", "MAIN"));
-		buffer.setTokenMarker(tokenMarker);
+		buffer.setTokenMarker(getTextMode().getTokenMarker());
 		setBuffer(buffer);
 		String property = propertyManager.getProperty("buffer.undoCount");
 		int undoCount = 100;
@@ -180,12 +175,75 @@ public class StandaloneTextArea extends TextArea {
 			} catch (NumberFormatException e) {
 			}
 		this.buffer.setUndoLimit(undoCount);
-		Mode mode = new Mode("text");
-		mode.setTokenMarker(tokenMarker);
-		ModeProvider.instance.addMode(mode);
+	} // }}}
+
+	// {{{ initActions() method
+	/**
+	 * Creates the action set of this text area and installs the key bindings.
+	 * The first text area parses textarea.actions.xml and builds the key
+	 * binding table. Later text areas share those actions, including their
+	 * cached BeanShell code, and the key binding table, so creating them does
+	 * not parse anything.
+	 * <p>
+	 * Because the key binding table is shared, a key binding added to one
+	 * standalone text area is added to all of them.
+	 */
+	private void initActions() {
+		StandaloneActionSet actionSet;
+		synchronized (StandaloneTextArea.class) {
+			if (sharedActions == null) {
+				actionSet = new StandaloneActionSet(propertyManager, this);
+				addActionSet(actionSet);
+				actionSet.load();
+				actionSet.initKeyBindings();
+				sharedActions = actionSet.getActions();
+				sharedBindings = getInputHandler().getBindings();
+				return;
+			}
+		}
+		actionSet = new StandaloneActionSet(propertyManager, this,
+				sharedActions);
+		addActionSet(actionSet);
+		getInputHandler().setBindings(sharedBindings);
+	} // }}}
+
+	// {{{ initGlobals() method
+	/**
+	 * Installs the fold handlers and the kill ring, which are global. Only the
+	 * first standalone text area does this, so that later ones do not replace
+	 * the kill ring and lose its contents.
+	 */
+	private static synchronized void initGlobals() {
+		if (globalsInitialized)
+			return;
+		globalsInitialized = true;
+
+		DefaultFoldHandlerProvider foldHandlerProvider = new DefaultFoldHandlerProvider();
+
+		FoldHandler.foldHandlerProvider = foldHandlerProvider;
+		foldHandlerProvider.addFoldHandler(new ExplicitFoldHandler());
+		foldHandlerProvider.addFoldHandler(new IndentFoldHandler());
+		foldHandlerProvider.addFoldHandler(new DummyFoldHandler());
+
 		KillRing.setInstance(new KillRing());
 		KillRing.getInstance().propertiesChanged(100);
+	} // }}}
 
+	// {{{ getTextMode() method
+	/**
+	 * Returns the plain "text" mode, which is registered once and shared by
+	 * all standalone text areas.
+	 */
+	private static Mode getTextMode() {
+		Mode mode = ModeProvider.instance.getMode("text");
+		if (mode == null) {
+			TokenMarker tokenMarker = new TokenMarker();
+			tokenMarker.addRuleSet(new ParserRuleSet("text", "MAIN"));
+			mode = new Mode("text");
+			mode.setTokenMarker(tokenMarker);
+			mode = ModeProvider.instance.addMode(mode);
+		}
+		return mode;
 	} // }}}
 
 	// {{{ initTextArea() method
@@ -547,32 +605,22 @@ public class StandaloneTextArea extends TextArea {
 	 * @since 4.3pre13
 	 */
 	public static StandaloneTextArea createTextArea(ViewInterface view) {
-		final Properties props = new Properties();
-		props.putAll(loadProperties("/org/gjt/sp/jedit/jedit_keys.props"));
-		props.putAll(loadProperties("/org/gjt/sp/jedit/jedit.props"));
-		IPropertyManager propmgr = new IPropertyManager() {
-			public String getProperty(String name) {
-				return props.getProperty(name);
-			}
-		};
-		StandaloneTextArea textArea = new StandaloneTextArea(propmgr, view);
-		textArea.getBuffer().setProperty("folding", "explicit");
-
-		return textArea;
-	} // }}}
-
-	// {{{ loadProperties() method.
-	static Properties loadProperties(String fileName) {
-		Properties props = new Properties();
-		InputStream in = TextArea.class.getResourceAsStream(fileName);
+		IPropertyManager propmgr;
 		try {
-			props.load(in);
+			// the property files are only read for the first text area.
+			propmgr = PropertySnapshot.getTextAreaProperties().createOverlay();
 		} catch (IOException e) {
 			Log.log(Log.ERROR, TextArea.class, e);
-		} finally {
-			IOUtilities.closeQuietly(in);
+			propmgr = new IPropertyManager() {
+				public String getProperty(String name) {
+					return null;
+				}
+			};
 		}
-		return props;
+		StandaloneTextArea textArea = new StandaloneTextArea(propmgr, view);
+		textArea.getBuffer().setProperty("folding", "explicit");
+
+		return textArea;
 	} // }}}
 
 	// {{{ StandaloneActionSet class
@@ -592,6 +640,19 @@ public class StandaloneTextArea extends TextArea {
 			this.textArea = textArea;
 		}
 
+		/**
+		 * Creates an action set that holds actions that have already been
+		 * loaded by another action set.
+		 */
+		StandaloneActionSet(IPropertyManager iPropertyManager,
+				TextArea textArea, JEditBeanShellAction[] loadedActions) {
+			this.iPropertyManager = iPropertyManager;
+			this.textArea = textArea;
+			for (JEditBeanShellAction action : loadedActions) {
+				actions.put(action.getName(), action);
+			}
+		}
+
 		@Override
 		protected JEditBeanShellAction[] getArray(int size) {
 			return new JEditBeanShellAction[size];
@@ -710,7 +771,7 @@ public class StandaloneTextArea extends TextArea {
 
 		Mode mode = new Mode("goal");
 		mode.setProperty("file", "modes/goal.xml");
-		ModeProvider.instance.addMode(mode);
+		mode = ModeProvider.instance.addMode(mode);
 
 		/*
 		 * try { if (args.length>0) text.getBuffer().insert(0,
@@ -755,8 +755,20 @@ public class TextAreaPainter extends JComponent implements TabExpander
 			int numLines = lastLine - firstLine + 1;
 			int y = firstLine * lineHeight;
 			gfx.fillRect(0,y,getWidth(),numLines * lineHeight);
-			extensionMgr.paintScreenLineRange(textArea,gfx,
-				firstLine,lastLine,y,lineHeight);
+			// lock once for all lines, instead of once per line
+			// and per access. The buffer can not change halfway
+			// through painting either.
+			JEditBuffer buffer = textArea.getBuffer();
+			buffer.readLock();
+			try
+			{
+				extensionMgr.paintScreenLineRange(textArea,gfx,
+					firstLine,lastLine,y,lineHeight);
+			}
+			finally
+			{
+				buffer.readUnlock();
+			}
 			linesTime = System.nanoTime() - linesTime;
 
 			if(Debug.PAINT_TIMER && numLines >= 1)